@@ -0,0 +1,107 @@
+package org.ngs.ngunits.bench;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import org.ngs.ngunits.Unit;
+import org.ngs.ngunits.UnitConverter;
+import org.ngs.ngunits.format.UnitFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converting arrays of values with the bulk methods of
+ * {@link UnitConverter}, compared with converting them one at a time.
+ * Times are per array.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BulkConversionBenchmark
+{
+    /**
+     * The units to convert between: a rational factor (km/h to m/s), an
+     * offset (degrees Celsius to kelvin), or the identity between a product
+     * of base units and the derived unit it equals (kg\u00B7m\u00B2/(s\u00B3\u00B7A) to V).
+     */
+    @Param({ "rational", "offset", "identity" })
+    public String converter;
+
+    /** */
+    @Param({ "16", "1024", "65536" })
+    public int length;
+
+    /** */
+    private UnitConverter _converter;
+
+    /** */
+    private double[] _src;
+
+    /** */
+    private double[] _dst;
+
+    /** */
+    private float[] _floatSrc;
+
+    /** */
+    private float[] _floatDst;
+
+    /** */
+    @Setup
+    public void setUp () throws ParseException {
+        UnitFormat format = UnitFormat.getInstance();
+        String[] units;
+        if (converter.equals("rational")) {
+            units = Corpus.CONVERSIONS[0];
+        } else if (converter.equals("offset")) {
+            units = Corpus.CONVERSIONS[5];
+        } else {
+            units = Corpus.CONVERSIONS[7];
+        }
+        Unit<?> source = (Unit<?>)format.parseObject(units[0]);
+        Unit<?> target = (Unit<?>)format.parseObject(units[1]);
+        _converter = source.getConverterTo(target);
+        _src = new double[length];
+        _dst = new double[length];
+        _floatSrc = new float[length];
+        _floatDst = new float[length];
+        for (int i = 0; i < length; i += 1) {
+            _src[i] = i * 0.5;
+            _floatSrc[i] = i * 0.5f;
+        }
+    }
+
+    /** */
+    @Benchmark
+    public double[] convertArray () {
+        _converter.convert(_src, 0, _dst, 0, length);
+        return _dst;
+    }
+
+    /** */
+    @Benchmark
+    public float[] convertFloatArray () {
+        _converter.convert(_floatSrc, 0, _floatDst, 0, length);
+        return _floatDst;
+    }
+
+    /** Converts the values one at a time, as callers without the bulk methods do. */
+    @Benchmark
+    public double[] convertEach () {
+        for (int i = 0; i < length; i += 1) {
+            _dst[i] = _converter.convert(_src[i]);
+        }
+        return _dst;
+    }
+}
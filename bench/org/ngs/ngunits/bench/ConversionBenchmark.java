@@ -0,0 +1,97 @@
+package org.ngs.ngunits.bench;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import org.ngs.ngunits.Unit;
+import org.ngs.ngunits.UnitConverter;
+import org.ngs.ngunits.format.UnitFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Finding converters between units, checking compatibility, and converting
+ * single values. Each operation uses the next pair of units in
+ * {@link Corpus#CONVERSIONS} in turn, which between them have linear,
+ * rational and offset converters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ConversionBenchmark
+{
+    /** */
+    private Unit<?>[] _sources;
+
+    /** */
+    private Unit<?>[] _targets;
+
+    /** */
+    private UnitConverter[] _converters;
+
+    /** */
+    private double _value;
+
+    /** */
+    private int _next;
+
+    /** */
+    @Setup
+    public void setUp () throws ParseException {
+        UnitFormat format = UnitFormat.getInstance();
+        int n = Corpus.CONVERSIONS.length;
+        _sources = new Unit<?>[n];
+        _targets = new Unit<?>[n];
+        _converters = new UnitConverter[n];
+        for (int i = 0; i < n; i += 1) {
+            _sources[i] = (Unit<?>)format.parseObject(Corpus.CONVERSIONS[i][0]);
+            _targets[i] = (Unit<?>)format.parseObject(Corpus.CONVERSIONS[i][1]);
+            _converters[i] = _sources[i].getConverterTo(_targets[i]);
+        }
+        _value = 1.5;
+    }
+
+    /** */
+    private int next () {
+        int i = _next;
+        _next = (i + 1 < _sources.length) ? i + 1 : 0;
+        return i;
+    }
+
+    /** */
+    @Benchmark
+    public UnitConverter getConverterTo () {
+        int i = next();
+        return _sources[i].getConverterTo(_targets[i]);
+    }
+
+    /** */
+    @Benchmark
+    public boolean isCompatible () {
+        int i = next();
+        return _sources[i].isCompatible(_targets[i]);
+    }
+
+    /** Checks pairs of units that are, for the most part, incompatible. */
+    @Benchmark
+    public boolean isIncompatible () {
+        int i = next();
+        return _sources[i].isCompatible(_targets[(i + 1 < _targets.length) ? i + 1 : 0]);
+    }
+
+    /** */
+    @Benchmark
+    public double convert () {
+        return _converters[next()].convert(_value);
+    }
+}
@@ -0,0 +1,96 @@
+package org.ngs.ngunits.bench;
+
+import java.text.Format;
+import java.text.ParseException;
+import org.ngs.ngunits.Unit;
+
+/**
+ * Unit expressions shared by the benchmarks. Each corpus is written in the
+ * syntax of the format that parses it.
+ */
+final class Corpus
+{
+    /** The definitions of units in the UCUM essence, as in <code>UCUMFormat.main</code>. */
+    static final String[] UCUM_ESSENCE = {
+        "rad2", "s-1", "kg.m/s2", "N/m2", "N.m", "J/s", "C/s",
+        "J/C", "C/V", "V/A", "Ohm-1", "V.s", "Wb/m2", "Wb/A",
+        "cd.sr", "lm/m2", "s-1", "J/kg", "J/kg", "deg",
+        "[pi].rad/360", "deg/60", "'/60", "dm3", "m2",
+        "a_j/12", "a_g/12", "kg", "[e].V", "Mm", "m/s", "J.s",
+        "J/K", "F/m", "m3.kg-1/s2", "m/s2", "[c].a_j",
+        "g.[g]", "[lb_av].[g]", "cm-1{salt}", "cm/s2", "g.cm/s2",
+        "dyn.cm", "dyn.s/cm2", "cm2/s", "/[pi].A/m", "Oe.cm",
+        "cd/cm2", "cd/cm2/[pi]", "lx", "Bq", "C/kg", "erg/g",
+        "RAD", "cm", "[nmi_i]/h", "[in_i]2", "[ft_i]2",
+        "[yd_i]2", "[in_i]3", "[ft_i]3", "[yd_i]3", "[in_i]3",
+        "[ft_i]3", "[pi]/4.[mil_i]2", "m/3937", "[ft_us]/12",
+        "[ch_us]/100", "[rch_us]/100", "[rd_us]2", "[rd_us]2",
+        "[mi_us]2", "[mi_us]2", "cm", "[ch_br]/100",
+        "[nmi_br]/h", "[yd_br]2", "[in_i]3", "[gal_us]/4",
+        "[qt_us]/2", "[pt_us]/4", "[gil_us]/4", "[foz_us]/8",
+        "[fdr_us]/60", "[ft_i]3", "[in_i]3", "[bu_us]/8",
+        "[bu_us]/4", "[pk_us]/8", "[dqt_us]/2", "[foz_us]/2",
+        "[tbs_us]/3", "[gal_br]/4", "[qt_br]/2", "[pt_br]/4",
+        "[gil_br]/5", "[foz_br]/8", "[fdr_br]/60", "mg",
+        "[lb_av]/16", "[oz_av]/16", "[in_i]/12", "[lne]/6",
+        "[pied]/12", "[pouce]/12", "[ligne]/6", "[didot]",
+        "[Btu_th]", "[ft_i].[lbf_av]/s", "kPa", "kPa", "/m",
+        "/[in_i]", "mm/[pi]", "ml/12", "mL/min/kg", "g/dl",
+        "mol/s", "umol/min", "m3", "nm", "fm2", "kgf/cm2",
+        "S", "[lbf_av]/[in_i]2", "[pi].rad", "[pi].sr", "/24",
+        "/s", "1/s"
+    };
+
+    /** Prefixed SI units, for {@link org.ngs.ngunits.format.UnitFormat}. */
+    static final String[] PREFIXED_SI = {
+        "km", "cm", "mm", "\u00B5m", "nm", "mg", "kg", "\u00B5s", "ns", "ms",
+        "GHz", "MHz", "kPa", "MPa", "hPa", "MW", "kW", "mW", "kJ", "MJ",
+        "mA", "kV", "mV", "\u00B5F", "nF", "pF", "k\u03A9", "M\u03A9", "mmol", "\u00B5mol",
+        "mL", "dL", "kN", "mN", "GBq", "mSv"
+    };
+
+    /** Prefixed SI units, for {@link org.ngs.ngunits.format.UCUMFormat}. */
+    static final String[] UCUM_PREFIXED_SI = {
+        "km", "cm", "mm", "um", "nm", "mg", "kg", "us", "ns", "ms",
+        "GHz", "MHz", "kPa", "MPa", "hPa", "MW", "kW", "mW", "kJ", "MJ",
+        "mA", "kV", "mV", "uF", "nF", "pF", "kOhm", "MOhm", "mmol", "umol",
+        "mL", "dL", "kN", "mN", "GBq", "mSv"
+    };
+
+    /** Products of several units with exponents, for {@link org.ngs.ngunits.format.UnitFormat}. */
+    static final String[] PRODUCTS = {
+        "kg\u00B7m\u00B2/(s\u00B3\u00B7A)", "m\u00B3/(kg\u00B7s\u00B2)", "mol/(l\u00B7s)",
+        "kW\u00B7h/(m\u00B2\u00B7d)", "N\u00B7m/(rad\u00B7s)", "W/(m\u00B2\u00B7K)", "J/(kg\u00B7K)",
+        "Pa\u00B7s", "m/s\u00B2", "km/h", "A\u00B7s/kg", "kg\u00B7m\u00B7mol/s\u00B2",
+        "mm\u00B3/(g\u00B7min)", "kg\u00B7m\u00B2/(s\u00B2\u00B7K\u00B7mol)", "V\u00B7A\u00B7s/(m\u00B3\u00B7kg)",
+        "cd\u00B7sr/(m\u00B2\u00B7s)"
+    };
+
+    /** Products of several units with exponents, for {@link org.ngs.ngunits.format.UCUMFormat}. */
+    static final String[] UCUM_PRODUCTS = {
+        "kg.m2/(s3.A)", "m3/(kg.s2)", "mol/(L.s)",
+        "kW.h/(m2.d)", "N.m/(rad.s)", "W/(m2.K)", "J/(kg.K)",
+        "Pa.s", "m/s2", "km/h", "A.s/kg", "kg.m.mol/s2",
+        "mm3/(g.min)", "kg.m2/(s2.K.mol)", "V.A.s/(m3.kg)",
+        "cd.sr/(m2.s)", "ug/kg/min", "mmol/L", "mL/min/kg", "g/dL"
+    };
+
+    /** Pairs of compatible units, for {@link org.ngs.ngunits.format.UnitFormat}. */
+    static final String[][] CONVERSIONS = {
+        { "km/h", "m/s" }, { "kW\u00B7h", "MJ" }, { "kPa", "N/m\u00B2" }, { "\u00B5s", "ns" },
+        { "mol/(l\u00B7s)", "mmol/(ml\u00B7min)" }, { "\u2103", "K" }, { "g/cm\u00B3", "kg/m\u00B3" },
+        { "kg\u00B7m\u00B2/(s\u00B3\u00B7A)", "V" }
+    };
+
+    /** */
+    private Corpus () { }
+
+    /** Parses every string, so that a typo fails the benchmark's setup rather than its measurement. */
+    static Unit<?>[] parse (Format format, String[] strings) throws ParseException {
+        Unit<?>[] result = new Unit<?>[strings.length];
+        for (int i = 0; i < strings.length; i += 1) {
+            result[i] = (Unit<?>)format.parseObject(strings[i]);
+        }
+        return result;
+    }
+}
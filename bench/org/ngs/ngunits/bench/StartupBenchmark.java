@@ -0,0 +1,114 @@
+package org.ngs.ngunits.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.ngs.ngunits.NonSI;
+import org.ngs.ngunits.SI;
+import org.ngs.ngunits.Unit;
+import org.ngs.ngunits.UserDefined;
+import org.ngs.ngunits.format.UCUMFormat;
+import org.ngs.ngunits.format.UnitFormat;
+
+/**
+ * Measures the cost of the first use of the library, as paid by short-lived
+ * processes. Each scenario is run in a number of fresh JVMs, and the median
+ * time spent in the scenario itself and the median wall time of the whole
+ * JVM are reported.
+ * <p>
+ * Usage: <code>StartupBenchmark [-runs n] [scenario]...</code>, where the
+ * scenarios are <code>si</code>, <code>nonsi</code>, <code>unitformat</code>,
+ * <code>ucum</code> and <code>userdefined</code> (all by default).
+ */
+public final class StartupBenchmark
+{
+    /** */
+    private static final String[] SCENARIOS = { "si", "nonsi", "unitformat", "ucum", "userdefined" };
+
+    /** */
+    private StartupBenchmark () { }
+
+    /** Runs a scenario in this JVM. */
+    private static Object run (String scenario) throws Exception {
+        if (scenario.equals("si")) {
+            Unit<?> speed = SI.METRE.divide(SI.SECOND);
+            return Double.valueOf(SI.KILOMETRE.divide(SI.SECOND).getConverterTo(speed).convert(1.0));
+        } else if (scenario.equals("nonsi")) {
+            return Double.valueOf(NonSI.MILE.getConverterTo(SI.METRE).convert(1.0));
+        } else if (scenario.equals("unitformat")) {
+            UnitFormat format = UnitFormat.getInstance();
+            return format.format(format.parseObject("km/h"));
+        } else if (scenario.equals("ucum")) {
+            UCUMFormat format = UCUMFormat.getCaseSensitiveInstance();
+            return format.format(format.parseObject("km/h"));
+        } else if (scenario.equals("userdefined")) {
+            return UserDefined.FORMAT.format(UserDefined.FORMAT.parseObject("widget/s"));
+        } else {
+            throw new IllegalArgumentException("Unknown scenario " + scenario);
+        }
+    }
+
+    /** Runs a scenario in a new JVM, returning the time spent in it and the wall time, in nanoseconds. */
+    private static long[] fork (String scenario) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                                    StartupBenchmark.class.getName(), "-child", scenario);
+        builder.redirectErrorStream(true);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String last = null;
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            last = line;
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException("Scenario " + scenario + " failed: " + last);
+        }
+        return new long[] { Long.parseLong(last.trim()), System.nanoTime() - start };
+    }
+
+    /** */
+    private static double median (long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        return ((n % 2) == 1) ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2.0;
+    }
+
+    /** */
+    public static void main (String[] args) throws Exception {
+        if ((args.length == 2) && args[0].equals("-child")) {
+            long start = System.nanoTime();
+            run(args[1]);
+            System.out.println(System.nanoTime() - start);
+            return;
+        }
+        int runs = 10;
+        List<String> scenarios = new ArrayList<String>();
+        for (int i = 0; i < args.length; i += 1) {
+            if (args[i].equals("-runs")) {
+                runs = Integer.parseInt(args[++i]);
+            } else {
+                scenarios.add(args[i]);
+            }
+        }
+        if (scenarios.isEmpty()) {
+            scenarios.addAll(Arrays.asList(SCENARIOS));
+        }
+        System.out.println(String.format("%-12s %12s %12s", "scenario", "first use ms", "JVM ms"));
+        for (String scenario : scenarios) {
+            long[] inside = new long[runs];
+            long[] wall = new long[runs];
+            for (int i = 0; i < runs; i += 1) {
+                long[] times = fork(scenario);
+                inside[i] = times[0];
+                wall[i] = times[1];
+            }
+            System.out.println(String.format("%-12s %12.1f %12.1f", scenario, median(inside) / 1e6, median(wall) / 1e6));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.ngs.ngunits.bench;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.ngs.ngunits.format.SymbolMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looking up prefixed SI symbols in the symbol maps of the formats, both
+ * as whole strings and as regions of a larger expression, as the parsers
+ * do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SymbolLookupBenchmark
+{
+    /** */
+    @Param({ "unitformat", "ucum" })
+    public String symbols;
+
+    /** */
+    private SymbolMap _map;
+
+    /** */
+    private String[] _symbols;
+
+    /** The symbols joined by spaces. */
+    private String _expression;
+
+    /** Start and end of each symbol in the expression. */
+    private int[] _bounds;
+
+    /** */
+    private int _next;
+
+    /** */
+    @Setup
+    public void setUp () {
+        if (symbols.equals("unitformat")) {
+            _map = new SymbolMap("org.ngs.ngunits.format.UnitFormat", Locale.ROOT);
+            _symbols = Corpus.PREFIXED_SI;
+        } else {
+            _map = new SymbolMap("org.ngs.ngunits.format.UCUM_CS", Locale.ROOT);
+            _symbols = Corpus.UCUM_PREFIXED_SI;
+        }
+        StringBuilder expression = new StringBuilder();
+        _bounds = new int[_symbols.length * 2];
+        for (int i = 0; i < _symbols.length; i += 1) {
+            if (_map.lookup(_symbols[i]) == null) {
+                throw new IllegalStateException("No symbol " + _symbols[i]);
+            }
+            _bounds[2 * i] = expression.length();
+            expression.append(_symbols[i]);
+            _bounds[2 * i + 1] = expression.length();
+            expression.append(' ');
+        }
+        _expression = expression.toString();
+    }
+
+    /** */
+    private int next () {
+        int i = _next;
+        _next = (i + 1 < _symbols.length) ? i + 1 : 0;
+        return i;
+    }
+
+    /** */
+    @Benchmark
+    public SymbolMap.Entry lookup () {
+        return _map.lookup(_symbols[next()]);
+    }
+
+    /** */
+    @Benchmark
+    public SymbolMap.Entry lookupRegion () {
+        int i = next();
+        return _map.lookup(_expression, _bounds[2 * i], _bounds[2 * i + 1]);
+    }
+}
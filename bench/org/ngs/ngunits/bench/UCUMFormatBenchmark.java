@@ -0,0 +1,108 @@
+package org.ngs.ngunits.bench;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import org.ngs.ngunits.BoundedCache;
+import org.ngs.ngunits.Unit;
+import org.ngs.ngunits.format.UCUMFormat;
+import org.ngs.ngunits.format.UnitFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing and formatting with the case-sensitive {@link UCUMFormat}, with
+ * and without the caches of parse results and formatted text. Each
+ * operation handles the next unit of the corpus in turn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class UCUMFormatBenchmark
+{
+    /** */
+    @Param({ "essence", "prefixed", "products" })
+    public String corpus;
+
+    /** */
+    @Param({ "true", "false" })
+    public boolean cached;
+
+    /** */
+    private UCUMFormat _format;
+
+    /** */
+    private String[] _strings;
+
+    /** */
+    private Unit<?>[] _units;
+
+    /** */
+    private StringBuilder _builder;
+
+    /** */
+    private int _next;
+
+    /** */
+    @Setup
+    public void setUp () throws ParseException {
+        _format = UCUMFormat.getCaseSensitiveInstance();
+        int size = cached ? UnitFormat.DEFAULT_PARSE_CACHE_SIZE : 0;
+        _format.setParseCache(size, BoundedCache.Policy.SECOND_CHANCE);
+        _format.setFormatCache(size, BoundedCache.Policy.SECOND_CHANCE);
+        if (corpus.equals("essence")) {
+            _strings = Corpus.UCUM_ESSENCE;
+        } else if (corpus.equals("prefixed")) {
+            _strings = Corpus.UCUM_PREFIXED_SI;
+        } else {
+            _strings = Corpus.UCUM_PRODUCTS;
+        }
+        _units = Corpus.parse(_format, _strings);
+        _builder = new StringBuilder();
+    }
+
+    /** Restores the caches of the shared instance. */
+    @TearDown
+    public void tearDown () {
+        _format.setParseCache(UnitFormat.DEFAULT_PARSE_CACHE_SIZE, BoundedCache.Policy.SECOND_CHANCE);
+        _format.setFormatCache(UnitFormat.DEFAULT_FORMAT_CACHE_SIZE, BoundedCache.Policy.SECOND_CHANCE);
+    }
+
+    /** */
+    private int next () {
+        int i = _next;
+        _next = (i + 1 < _strings.length) ? i + 1 : 0;
+        return i;
+    }
+
+    /** */
+    @Benchmark
+    public Object parseObject () throws ParseException {
+        return _format.parseObject(_strings[next()]);
+    }
+
+    /** */
+    @Benchmark
+    public String format () {
+        return _format.format(_units[next()]);
+    }
+
+    /** Formats into a reused builder, as callers that avoid garbage do. */
+    @Benchmark
+    public StringBuilder formatToBuilder () {
+        _builder.setLength(0);
+        return _format.format(_units[next()], _builder);
+    }
+}
@@ -0,0 +1,96 @@
+package org.ngs.ngunits.bench;
+
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.ngs.ngunits.BoundedCache;
+import org.ngs.ngunits.Unit;
+import org.ngs.ngunits.format.SymbolMap;
+import org.ngs.ngunits.format.UnitFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing and formatting with {@link UnitFormat}, with and without the
+ * caches of parse results and formatted text. Each operation handles the
+ * next unit of the corpus in turn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class UnitFormatBenchmark
+{
+    /** */
+    @Param({ "prefixed", "products" })
+    public String corpus;
+
+    /** */
+    @Param({ "true", "false" })
+    public boolean cached;
+
+    /** */
+    private UnitFormat _format;
+
+    /** */
+    private String[] _strings;
+
+    /** */
+    private Unit<?>[] _units;
+
+    /** */
+    private StringBuilder _builder;
+
+    /** */
+    private int _next;
+
+    /** */
+    @Setup
+    public void setUp () throws ParseException {
+        _format = UnitFormat.getInstance(new SymbolMap("org.ngs.ngunits.format.UnitFormat", Locale.ROOT));
+        if (!cached) {
+            _format.setParseCache(0, BoundedCache.Policy.SECOND_CHANCE);
+            _format.setFormatCache(0, BoundedCache.Policy.SECOND_CHANCE);
+        }
+        _strings = corpus.equals("prefixed") ? Corpus.PREFIXED_SI : Corpus.PRODUCTS;
+        _units = Corpus.parse(_format, _strings);
+        _builder = new StringBuilder();
+    }
+
+    /** */
+    private int next () {
+        int i = _next;
+        _next = (i + 1 < _strings.length) ? i + 1 : 0;
+        return i;
+    }
+
+    /** */
+    @Benchmark
+    public Object parseObject () throws ParseException {
+        return _format.parseObject(_strings[next()]);
+    }
+
+    /** */
+    @Benchmark
+    public String format () {
+        return _format.format(_units[next()]);
+    }
+
+    /** Formats into a reused builder, as callers that avoid garbage do. */
+    @Benchmark
+    public StringBuilder formatToBuilder () {
+        _builder.setLength(0);
+        return _format.format(_units[next()], _builder);
+    }
+}
@@ -0,0 +1,143 @@
+package org.ngs.ngunits.build;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Compiles the resource bundles of symbols and metadata in the source tree
+ * into Java classes that extend <code>org.ngs.ngunits.format.SymbolTable</code>
+ * and refer to the units and prefixes named by the bundles' keys directly.
+ * A table is written next to each <code>.properties</code> file of a bundle,
+ * with the locale's parents merged in, and lists the entries in the order
+ * the bundle enumerates its keys, so a map loaded from the table is the
+ * same as one read from the bundle.
+ * <p>
+ * Usage: <code>SymbolTableGenerator &lt;source dir&gt; [-symbols | -metadata | &lt;base name&gt;]...</code>.
+ * The base names following <code>-metadata</code> are bundles of unit
+ * metadata, and the others are bundles of symbols.
+ */
+public final class SymbolTableGenerator
+{
+    /** */
+    private final File _sourceDir;
+
+    /** */
+    private final ClassLoader _loader;
+
+    /** */
+    private SymbolTableGenerator (File sourceDir) throws IOException {
+        _sourceDir = sourceDir;
+        _loader = new URLClassLoader(new URL[] { sourceDir.toURI().toURL() }, null);
+    }
+
+    /** Generates the tables for every locale of the bundle with the given base name. */
+    private void generate (String baseName, boolean metadata) throws IOException {
+        File dir = new File(_sourceDir, baseName.substring(0, baseName.lastIndexOf('.')).replace('.', File.separatorChar));
+        String simpleName = baseName.substring(baseName.lastIndexOf('.') + 1);
+        List<Locale> locales = new ArrayList<Locale>();
+        if (new File(dir, simpleName + ".properties").isFile()) {
+            locales.add(Locale.ROOT);
+        }
+        String[] files = dir.list();
+        for (int i = 0; (files != null) && (i < files.length); i += 1) {
+            String file = files[i];
+            if (file.startsWith(simpleName + "_") && file.endsWith(".properties")) {
+                String[] parts = file.substring(simpleName.length() + 1, file.length() - ".properties".length()).split("_", 3);
+                if (parts[0].matches("[a-z]{2,8}")) {
+                    locales.add(new Locale(parts[0], (parts.length > 1) ? parts[1] : "", (parts.length > 2) ? parts[2] : ""));
+                }
+            }
+        }
+        if (locales.isEmpty()) {
+            throw new IOException("No bundle " + baseName + " in " + _sourceDir);
+        }
+        ResourceBundle.Control control = ResourceBundle.Control.getNoFallbackControl(ResourceBundle.Control.FORMAT_PROPERTIES);
+        for (Locale locale : locales) {
+            ResourceBundle rb = ResourceBundle.getBundle(baseName, locale, _loader, control);
+            String suffix = locale.toString();
+            String className = simpleName + "Table" + ((suffix.length() > 0) ? "_" + suffix : "");
+            File file = new File(dir, className + ".java");
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "US-ASCII"));
+            try {
+                String bundleFile = simpleName + ((suffix.length() > 0) ? "_" + suffix : "") + ".properties";
+                out.println("// Generated from " + bundleFile + " by " + SymbolTableGenerator.class.getName() + ". Do not edit.");
+                out.println("package " + baseName.substring(0, baseName.lastIndexOf('.')) + ";");
+                out.println();
+                out.println("final class " + className + " extends SymbolTable");
+                out.println("{");
+                out.println("    @Override");
+                if (metadata) {
+                    out.println("    void load (UnitMetadata metadata) {");
+                } else {
+                    out.println("    void load (SymbolMap map) {");
+                }
+                for (Enumeration<String> keys = rb.getKeys(); keys.hasMoreElements();) {
+                    String key = keys.nextElement();
+                    if (metadata) {
+                        int lastDot = key.lastIndexOf('.');
+                        out.println("        put(metadata, " + key.substring(0, lastDot) + ", "
+                                    + quote(key.substring(lastDot + 1)) + ", " + quote(rb.getString(key)) + ");");
+                    } else {
+                        StringBuilder symbols = new StringBuilder();
+                        for (String symbol : rb.getString(key).split(",")) {
+                            symbols.append(", ").append(quote(symbol));
+                        }
+                        out.println("        put(map, " + key + symbols + ");");
+                    }
+                }
+                out.println("    }");
+                out.println("}");
+            } finally {
+                out.close();
+            }
+            if (out.checkError()) {
+                throw new IOException("Unable to write " + file);
+            }
+        }
+    }
+
+    /** Returns a Java string literal, with non-ASCII characters escaped. */
+    private static String quote (String s) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if ((c == '"') || (c == '\\')) {
+                result.append('\\').append(c);
+            } else if ((c < 0x20) || (c > 0x7E)) {
+                result.append(String.format("\\u%04X", Integer.valueOf(c)));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /** */
+    public static void main (String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SymbolTableGenerator <source dir> [-symbols | -metadata | <base name>]...");
+            System.exit(1);
+        }
+        SymbolTableGenerator generator = new SymbolTableGenerator(new File(args[0]));
+        boolean metadata = false;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("-symbols")) {
+                metadata = false;
+            } else if (args[i].equals("-metadata")) {
+                metadata = true;
+            } else {
+                generator.generate(args[i], metadata);
+            }
+        }
+    }
+}
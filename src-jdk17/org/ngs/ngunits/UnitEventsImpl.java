@@ -0,0 +1,204 @@
+package org.ngs.ngunits;
+
+import java.text.Format;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * {@link UnitEvents} implemented with the <code>jdk.jfr</code> API. Fields
+ * are only filled in for events that will be committed.
+ * <p>
+ * Units are {@link UnitEvents#describe described} by the symbols of their
+ * factors rather than with a {@link org.ngs.ngunits.format.UnitFormat}:
+ * units are created, and converters looked up, while the systems of units
+ * are being initialized, and so before the formats' symbol maps can be read.
+ */
+final class UnitEventsImpl extends UnitEvents
+{
+    @Name("org.ngs.ngunits.Parse")
+    @Label("Unit Parse")
+    @Category("ngunits")
+    @Enabled(false)
+    static final class ParseEvent extends Event {
+        @Label("Format")
+        String format;
+
+        @Label("Source")
+        String source;
+
+        @Label("Unit")
+        String unit;
+
+        @Label("Cache")
+        String cache;
+    }
+
+    @Name("org.ngs.ngunits.Format")
+    @Label("Unit Format")
+    @Category("ngunits")
+    @Enabled(false)
+    static final class FormatEvent extends Event {
+        @Label("Format")
+        String format;
+
+        @Label("Text")
+        String text;
+
+        @Label("Cache")
+        String cache;
+    }
+
+    @Name("org.ngs.ngunits.Converter")
+    @Label("Converter Lookup")
+    @Category("ngunits")
+    @Enabled(false)
+    static final class ConverterEvent extends Event {
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+
+        @Label("Converter")
+        String converter;
+
+        @Label("Cache")
+        String cache;
+    }
+
+    @Name("org.ngs.ngunits.UnitCreation")
+    @Label("Unit Creation")
+    @Category("ngunits")
+    @Enabled(false)
+    static final class UnitCreationEvent extends Event {
+        @Label("Type")
+        String type;
+
+        @Label("Unit")
+        String unit;
+
+        @Label("Interned")
+        @Description("An equal unit created earlier was returned")
+        boolean interned;
+    }
+
+    @Name("org.ngs.ngunits.UserDefinition")
+    @Label("User Unit Definition")
+    @Category("ngunits")
+    @Enabled(false)
+    static final class DefinitionEvent extends Event {
+        @Label("Symbol")
+        String symbol;
+
+        @Label("Defined")
+        boolean defined;
+    }
+
+    @Override
+    public Object beginParse () {
+        ParseEvent event = new ParseEvent();
+        return start(event) ? event : null;
+    }
+
+    @Override
+    public void endParse (Object event, Format format, CharSequence source, Unit<?> result,
+                          CacheOutcome outcome) {
+        ParseEvent e = (ParseEvent)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.format = format.getClass().getName();
+            e.source = source.toString();
+            e.unit = (result != null) ? describe(result) : null;
+            e.cache = outcome.name();
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginFormat () {
+        FormatEvent event = new FormatEvent();
+        return start(event) ? event : null;
+    }
+
+    @Override
+    public void endFormat (Object event, Format format, Unit<?> unit, String text,
+                           CacheOutcome outcome) {
+        FormatEvent e = (FormatEvent)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.format = format.getClass().getName();
+            e.text = text;
+            e.cache = outcome.name();
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginConverter () {
+        ConverterEvent event = new ConverterEvent();
+        return start(event) ? event : null;
+    }
+
+    @Override
+    public void endConverter (Object event, Unit<?> from, Unit<?> to, UnitConverter converter,
+                              CacheOutcome outcome) {
+        ConverterEvent e = (ConverterEvent)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.from = describe(from);
+            e.to = describe(to);
+            e.converter = (converter != null) ? converter.getClass().getSimpleName() : null;
+            e.cache = outcome.name();
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginUnitCreation () {
+        UnitCreationEvent event = new UnitCreationEvent();
+        return start(event) ? event : null;
+    }
+
+    @Override
+    public void endUnitCreation (Object event, Unit<?> created, Unit<?> result) {
+        UnitCreationEvent e = (UnitCreationEvent)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.type = created.getClass().getSimpleName();
+            e.unit = describe(result);
+            e.interned = (result != created);
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginDefinition () {
+        DefinitionEvent event = new DefinitionEvent();
+        return start(event) ? event : null;
+    }
+
+    @Override
+    public void endDefinition (Object event, String symbol, Unit<?> unit) {
+        DefinitionEvent e = (DefinitionEvent)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.symbol = symbol;
+            e.defined = (unit != null);
+            e.commit();
+        }
+    }
+
+    /** Starts the event if it is being recorded. */
+    private static boolean start (Event event) {
+        if (!event.isEnabled()) {
+            return false;
+        }
+        event.begin();
+        return true;
+    }
+}
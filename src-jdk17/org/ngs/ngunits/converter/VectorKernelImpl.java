@@ -0,0 +1,99 @@
+package org.ngs.ngunits.converter;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * {@link VectorKernel} implemented with the <code>jdk.incubator.vector</code>
+ * API. Whole vectors are processed in the main loop and the remaining
+ * elements with a masked vector operation.
+ */
+final class VectorKernelImpl extends VectorKernel
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorKernelImpl () { }
+
+    /**
+     * Returns the kernels, or <code>null</code> if the platform has no SIMD
+     * support for doubles and the scalar loops should be used.
+     */
+    static VectorKernel create () {
+        return (SPECIES.length() < 2) ? null : new VectorKernelImpl();
+    }
+
+    @Override
+    void multiply (double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+                   double factor) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, src, srcOffset + i)
+                        .mul(factor)
+                        .intoArray(dst, dstOffset + i);
+        }
+        if (i < length) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, length);
+            DoubleVector.fromArray(SPECIES, src, srcOffset + i, mask)
+                        .mul(factor)
+                        .intoArray(dst, dstOffset + i, mask);
+        }
+    }
+
+    @Override
+    void multiplyDivide (double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+                         double dividend, double divisor) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, src, srcOffset + i)
+                        .mul(dividend)
+                        .div(divisor)
+                        .intoArray(dst, dstOffset + i);
+        }
+        if (i < length) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, length);
+            DoubleVector.fromArray(SPECIES, src, srcOffset + i, mask)
+                        .mul(dividend)
+                        .div(divisor)
+                        .intoArray(dst, dstOffset + i, mask);
+        }
+    }
+
+    @Override
+    void add (double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+              double offset) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, src, srcOffset + i)
+                        .add(offset)
+                        .intoArray(dst, dstOffset + i);
+        }
+        if (i < length) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, length);
+            DoubleVector.fromArray(SPECIES, src, srcOffset + i, mask)
+                        .add(offset)
+                        .intoArray(dst, dstOffset + i, mask);
+        }
+    }
+
+    @Override
+    void multiplyAdd (double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+                      double factor, double offset) {
+        int i = 0;
+        for (int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+            // mul then add, not fma(), to round exactly like the scalar loop.
+            DoubleVector.fromArray(SPECIES, src, srcOffset + i)
+                        .mul(factor)
+                        .add(offset)
+                        .intoArray(dst, dstOffset + i);
+        }
+        if (i < length) {
+            VectorMask<Double> mask = SPECIES.indexInRange(i, length);
+            DoubleVector.fromArray(SPECIES, src, srcOffset + i, mask)
+                        .mul(factor)
+                        .add(offset)
+                        .intoArray(dst, dstOffset + i, mask);
+        }
+    }
+}
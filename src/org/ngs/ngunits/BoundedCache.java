@@ -0,0 +1,195 @@
+package org.ngs.ngunits;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded, lock-free cache. Lookups and insertions never block;
+ * when the number of entries exceeds the capacity, entries are evicted
+ * according to the cache's {@link Policy}. The capacity is enforced
+ * approximately: under contention the cache may briefly hold a few more
+ * entries than its capacity.
+ * <p>
+ * Keys must have well-behaved <code>equals</code> and <code>hashCode</code>
+ * methods. Neither keys nor values may be <code>null</code>.
+ */
+public class BoundedCache<K,V>
+{
+    /** Eviction policies. */
+    public static enum Policy {
+
+        /** Evicts the oldest entry first, regardless of how often it has been used. */
+        FIFO,
+
+        /**
+         * Evicts the oldest entry that has not been read since it was last
+         * considered for eviction (the "clock" approximation of LRU).
+         */
+        SECOND_CHANCE
+    }
+
+    /** */
+    private static final class Node<V> {
+
+        final V value;
+
+        /** Racy by design; a lost update only affects eviction order. */
+        boolean referenced;
+
+        Node (V value) {
+            this.value = value;
+        }
+    }
+
+    /** */
+    private final int _capacity;
+
+    /** */
+    private final Policy _policy;
+
+    /** */
+    private final ConcurrentHashMap<K,Node<V>> _map;
+
+    /** Keys in insertion order, used to select eviction candidates. */
+    private final ConcurrentLinkedQueue<K> _queue;
+
+    /** */
+    private final AtomicInteger _size;
+
+    /** */
+    private final AtomicLong _hits;
+
+    /** */
+    private final AtomicLong _misses;
+
+    /** */
+    private final AtomicLong _evictions;
+
+    /**
+     * Creates a cache holding at most <code>capacity</code> entries.
+     * @param capacity the maximum number of entries, must be positive.
+     * @param policy the eviction policy.
+     */
+    public BoundedCache (int capacity, Policy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (policy == null) {
+            throw new NullPointerException("policy");
+        }
+        _capacity = capacity;
+        _policy = policy;
+        _map = new ConcurrentHashMap<K,Node<V>>(Math.min(capacity, 1024));
+        _queue = new ConcurrentLinkedQueue<K>();
+        _size = new AtomicInteger();
+        _hits = new AtomicLong();
+        _misses = new AtomicLong();
+        _evictions = new AtomicLong();
+    }
+
+    /** */
+    public int getCapacity () {
+        return _capacity;
+    }
+
+    /** */
+    public Policy getPolicy () {
+        return _policy;
+    }
+
+    /**
+     * Returns the value cached for the given key, or <code>null</code> if
+     * there is none.
+     */
+    public V get (K key) {
+        Node<V> node = _map.get(key);
+        if (node == null) {
+            _misses.incrementAndGet();
+            return null;
+        }
+        if ((_policy == Policy.SECOND_CHANCE) && !node.referenced) {
+            node.referenced = true;
+        }
+        _hits.incrementAndGet();
+        return node.value;
+    }
+
+    /**
+     * Caches a value for the given key, unless a value is already cached
+     * for it.
+     * @return the value now cached for the key, which is the existing
+     *   value if there was one, otherwise <code>value</code>.
+     */
+    public V put (K key, V value) {
+        Node<V> node = new Node<V>(value);
+        Node<V> existing = _map.putIfAbsent(key, node);
+        if (existing != null) {
+            return existing.value;
+        }
+        _queue.offer(key);
+        if (_size.incrementAndGet() > _capacity) {
+            evict();
+        }
+        return value;
+    }
+
+    /** Removes all entries. The hit and miss counters are not reset. */
+    public void clear () {
+        K key;
+        while ((key = _queue.poll()) != null) {
+            if (_map.remove(key) != null) {
+                _size.decrementAndGet();
+            }
+        }
+    }
+
+    /** Returns the approximate number of entries in this cache. */
+    public int size () {
+        return _size.get();
+    }
+
+    /** Returns the number of lookups that found a cached value. */
+    public long getHitCount () {
+        return _hits.get();
+    }
+
+    /** Returns the number of lookups that found no cached value. */
+    public long getMissCount () {
+        return _misses.get();
+    }
+
+    /** Returns the number of entries evicted to respect the capacity. */
+    public long getEvictionCount () {
+        return _evictions.get();
+    }
+
+    /** */
+    private void evict () {
+        while (_size.get() > _capacity) {
+            K key = _queue.poll();
+            if (key == null) {
+                return;
+            }
+            Node<V> node = _map.get(key);
+            if (node == null) {
+                continue;
+            }
+            if (node.referenced) {
+                // Give recently read entries another trip around the queue.
+                node.referenced = false;
+                _queue.offer(key);
+            } else if (_map.remove(key, node)) {
+                _size.decrementAndGet();
+                _evictions.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String toString () {
+        return "BoundedCache[" + _policy + ", size=" + size() + "/" + _capacity
+               + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+}
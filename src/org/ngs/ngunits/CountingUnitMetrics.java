@@ -0,0 +1,266 @@
+package org.ngs.ngunits;
+
+import java.lang.management.ManagementFactory;
+import java.text.Format;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics that count everything the library reports, and keep sketches of
+ * the symbols that are most often not found and of the (from, to) pairs of
+ * units that are most often converted between, in bounded memory (see
+ * {@link HeavyHitters}). The former are candidates for adding to the
+ * symbol maps, and the latter show how large the converter cache should
+ * be. For example:
+ * <pre>
+ * CountingUnitMetrics metrics = new CountingUnitMetrics();
+ * UnitMetrics.setInstance(metrics);
+ * metrics.register();
+ * </pre>
+ */
+public class CountingUnitMetrics extends UnitMetrics implements CountingUnitMetricsMBean
+{
+    /** The name the metrics are registered under by {@link #register()}. */
+    public static final String OBJECT_NAME = "org.ngs.ngunits:type=UnitMetrics";
+
+    /** Default number of counters in each row of the sketches. */
+    public static final int DEFAULT_SKETCH_WIDTH = 1024;
+
+    /** Default number of unknown symbols and of conversions listed. */
+    public static final int DEFAULT_TOP_SIZE = 20;
+
+    /** Key of the sketch of conversions: an ordered pair of units. */
+    private static final class Conversion {
+
+        private final Unit<?> _from;
+
+        private final Unit<?> _to;
+
+        Conversion (Unit<?> from, Unit<?> to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        public boolean equals (Object that) {
+            if (this == that) {
+                return true;
+            }
+            if (!(that instanceof Conversion)) {
+                return false;
+            }
+            Conversion conversion = (Conversion)that;
+            return _from.equals(conversion._from) && _to.equals(conversion._to);
+        }
+
+        @Override
+        public int hashCode () {
+            return 31 * _from.hashCode() + _to.hashCode();
+        }
+
+        @Override
+        public String toString () {
+            return UnitEvents.describe(_from) + " -> " + UnitEvents.describe(_to);
+        }
+    }
+
+    /** */
+    private final AtomicLong _parses;
+
+    /** */
+    private final AtomicLong _parseFailures;
+
+    /** Hits by {@link UnitMetrics.Cache} ordinal. */
+    private final AtomicLongArray _cacheHits;
+
+    /** Misses by {@link UnitMetrics.Cache} ordinal. */
+    private final AtomicLongArray _cacheMisses;
+
+    /** */
+    private final AtomicLong _converters;
+
+    /** */
+    private final AtomicLong _unconvertibles;
+
+    /** */
+    private final HeavyHitters<String> _unknownSymbols;
+
+    /** */
+    private final HeavyHitters<Conversion> _conversions;
+
+    /** */
+    public CountingUnitMetrics () {
+        this(DEFAULT_SKETCH_WIDTH, DEFAULT_TOP_SIZE);
+    }
+
+    /**
+     * @param sketchWidth the number of counters in each row of the sketches;
+     *   the error of the estimated counts is inversely proportional to it
+     * @param topSize the number of unknown symbols and of conversions listed
+     */
+    public CountingUnitMetrics (int sketchWidth, int topSize) {
+        if ((sketchWidth <= 0) || (topSize <= 0)) {
+            throw new IllegalArgumentException("Sizes must be positive");
+        }
+        _parses = new AtomicLong();
+        _parseFailures = new AtomicLong();
+        _cacheHits = new AtomicLongArray(Cache.values().length);
+        _cacheMisses = new AtomicLongArray(Cache.values().length);
+        _converters = new AtomicLong();
+        _unconvertibles = new AtomicLong();
+        _unknownSymbols = new HeavyHitters<String>(sketchWidth, topSize);
+        _conversions = new HeavyHitters<Conversion>(sketchWidth, topSize);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, under
+     * {@link #OBJECT_NAME}.
+     * @return the name they were registered under
+     * @throws JMException if they could not be registered, for example
+     *   because other metrics are registered under the same name
+     */
+    public ObjectName register () throws JMException {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        return name;
+    }
+
+    /////////////////////////
+    // UnitMetrics methods //
+    /////////////////////////
+
+    @Override
+    public void parsed (Format format, boolean succeeded) {
+        _parses.incrementAndGet();
+        if (!succeeded) {
+            _parseFailures.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void cacheHit (Cache cache) {
+        _cacheHits.incrementAndGet(cache.ordinal());
+    }
+
+    @Override
+    public void cacheMiss (Cache cache) {
+        _cacheMisses.incrementAndGet(cache.ordinal());
+    }
+
+    @Override
+    public void converterFound (Unit<?> from, Unit<?> to) {
+        _converters.incrementAndGet();
+        _conversions.add(new Conversion(from, to));
+    }
+
+    @Override
+    public void unconvertible (Unit<?> from, Unit<?> to) {
+        _unconvertibles.incrementAndGet();
+    }
+
+    @Override
+    public void unknownSymbol (CharSequence symbol, int start, int end) {
+        _unknownSymbols.add(symbol.subSequence(start, end).toString());
+    }
+
+    ///////////////////
+    // MBean methods //
+    ///////////////////
+
+    /** */
+    public long getParseCount () {
+        return _parses.get();
+    }
+
+    /** */
+    public long getParseFailureCount () {
+        return _parseFailures.get();
+    }
+
+    /** */
+    public long getParseCacheHitCount () {
+        return _cacheHits.get(Cache.PARSE.ordinal());
+    }
+
+    /** */
+    public long getParseCacheMissCount () {
+        return _cacheMisses.get(Cache.PARSE.ordinal());
+    }
+
+    /** */
+    public long getFormatCacheHitCount () {
+        return _cacheHits.get(Cache.FORMAT.ordinal());
+    }
+
+    /** */
+    public long getFormatCacheMissCount () {
+        return _cacheMisses.get(Cache.FORMAT.ordinal());
+    }
+
+    /** */
+    public long getConverterCacheHitCount () {
+        return _cacheHits.get(Cache.CONVERTER.ordinal());
+    }
+
+    /** */
+    public long getConverterCacheMissCount () {
+        return _cacheMisses.get(Cache.CONVERTER.ordinal());
+    }
+
+    /** */
+    public long getConverterCount () {
+        return _converters.get();
+    }
+
+    /** */
+    public long getUnconvertibleCount () {
+        return _unconvertibles.get();
+    }
+
+    /** */
+    public String[] getTopUnknownSymbols () {
+        return describe(_unknownSymbols.top());
+    }
+
+    /** */
+    public String[] getTopConversions () {
+        return describe(_conversions.top());
+    }
+
+    /** Returns the estimated number of times the given symbol was not found. */
+    public long getUnknownSymbolCount (String symbol) {
+        return _unknownSymbols.estimate(symbol);
+    }
+
+    /** Returns the estimated number of times a converter between the given units was found. */
+    public long getConversionCount (Unit<?> from, Unit<?> to) {
+        return _conversions.estimate(new Conversion(from, to));
+    }
+
+    /** */
+    public void reset () {
+        _parses.set(0);
+        _parseFailures.set(0);
+        for (int i = 0; i < _cacheHits.length(); i += 1) {
+            _cacheHits.set(i, 0);
+            _cacheMisses.set(i, 0);
+        }
+        _converters.set(0);
+        _unconvertibles.set(0);
+        _unknownSymbols.clear();
+        _conversions.clear();
+    }
+
+    /** */
+    private static <K> String[] describe (List<Map.Entry<K,Long>> entries) {
+        String[] result = new String[entries.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = entries.get(i).getKey() + ": " + entries.get(i).getValue();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,50 @@
+package org.ngs.ngunits;
+
+
+/**
+ * The management interface of {@link CountingUnitMetrics}. The lists of
+ * the most frequent unknown symbols and conversions hold one
+ * <code>"item: estimated count"</code> string per item, most frequent
+ * first.
+ */
+public interface CountingUnitMetricsMBean
+{
+    /** */
+    long getParseCount ();
+
+    /** */
+    long getParseFailureCount ();
+
+    /** */
+    long getParseCacheHitCount ();
+
+    /** */
+    long getParseCacheMissCount ();
+
+    /** */
+    long getFormatCacheHitCount ();
+
+    /** */
+    long getFormatCacheMissCount ();
+
+    /** */
+    long getConverterCacheHitCount ();
+
+    /** */
+    long getConverterCacheMissCount ();
+
+    /** */
+    long getConverterCount ();
+
+    /** */
+    long getUnconvertibleCount ();
+
+    /** */
+    String[] getTopUnknownSymbols ();
+
+    /** */
+    String[] getTopConversions ();
+
+    /** Sets all the counts to zero. */
+    void reset ();
+}
@@ -0,0 +1,155 @@
+package org.ngs.ngunits;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Finds the most frequent keys in a stream in bounded memory. Counts are
+ * kept in a Count-Min sketch, which never underestimates and overestimates
+ * by a small fraction of the total with high probability, and the keys with
+ * the highest estimates so far are kept in a list of fixed size.
+ * <p>
+ * Adding a key only takes a lock when the key may enter the list.
+ */
+final class HeavyHitters<K>
+{
+    /** Rows of the sketch, each with its own hash function. */
+    private static final int DEPTH = 4;
+
+    /** Odd multipliers for the hash functions of the rows. */
+    private static final int[] SEEDS = { 0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F };
+
+    /** The counters of the sketch, row after row. */
+    private final AtomicLongArray _counts;
+
+    /** The number of counters in a row, a power of two. */
+    private final int _width;
+
+    /** Shift that leaves the bits of a hash that index a row. */
+    private final int _shift;
+
+    /** */
+    private final int _capacity;
+
+    /** Estimated counts of the most frequent keys. */
+    private final ConcurrentHashMap<K,Long> _top;
+
+    /** The smallest estimate in the list once it is full; zero until then. */
+    private volatile long _threshold;
+
+    /**
+     * @param width the number of counters in each row of the sketch, which
+     *   is rounded up to a power of two
+     * @param capacity the number of keys to keep
+     */
+    HeavyHitters (int width, int capacity) {
+        int w = 2;
+        int shift = 31;
+        while (w < width) {
+            w <<= 1;
+            shift -= 1;
+        }
+        _width = w;
+        _shift = shift;
+        _capacity = capacity;
+        _counts = new AtomicLongArray(DEPTH * w);
+        _top = new ConcurrentHashMap<K,Long>();
+    }
+
+    /** Returns the index of the counter for a key in a row: the high bits of a multiplicative hash. */
+    private int index (int row, int hash) {
+        return row * _width + ((hash * SEEDS[row]) >>> _shift);
+    }
+
+    /** Counts one occurrence of the given key. */
+    void add (K key) {
+        int h = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i += 1) {
+            long count = _counts.incrementAndGet(index(i, h));
+            if (count < estimate) {
+                estimate = count;
+            }
+        }
+        Long current = _top.get(key);
+        if (current == null) {
+            if (estimate > _threshold) {
+                offer(key, estimate);
+            }
+            return;
+        }
+        // Listed keys are updated without the lock; an estimate never replaces a larger one.
+        Long value = Long.valueOf(estimate);
+        while ((current != null) && (estimate > current.longValue()) && !_top.replace(key, current, value)) {
+            current = _top.get(key);
+        }
+    }
+
+    /** Updates the estimate of a listed key, or lists a key that is now more frequent than the least. */
+    private synchronized void offer (K key, long estimate) {
+        Long current = _top.get(key);
+        if (current != null) {
+            if (estimate > current.longValue()) {
+                _top.put(key, Long.valueOf(estimate));
+            }
+        } else if (_top.size() < _capacity) {
+            _top.put(key, Long.valueOf(estimate));
+        } else {
+            K least = null;
+            long leastEstimate = Long.MAX_VALUE;
+            for (Map.Entry<K,Long> entry : _top.entrySet()) {
+                if (entry.getValue().longValue() < leastEstimate) {
+                    least = entry.getKey();
+                    leastEstimate = entry.getValue().longValue();
+                }
+            }
+            if (estimate <= leastEstimate) {
+                return;
+            }
+            _top.remove(least);
+            _top.put(key, Long.valueOf(estimate));
+        }
+        if (_top.size() >= _capacity) {
+            long threshold = Long.MAX_VALUE;
+            for (Long value : _top.values()) {
+                threshold = Math.min(threshold, value.longValue());
+            }
+            _threshold = threshold;
+        }
+    }
+
+    /** Returns the estimated count of the given key, which is never less than its actual count. */
+    long estimate (K key) {
+        int h = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i += 1) {
+            estimate = Math.min(estimate, _counts.get(index(i, h)));
+        }
+        return estimate;
+    }
+
+    /** Returns the most frequent keys and their estimated counts, most frequent first. */
+    List<Map.Entry<K,Long>> top () {
+        List<Map.Entry<K,Long>> result = new ArrayList<Map.Entry<K,Long>>(_top.entrySet());
+        Collections.sort(result, new Comparator<Map.Entry<K,Long>>() {
+            public int compare (Map.Entry<K,Long> a, Map.Entry<K,Long> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        return result;
+    }
+
+    /** */
+    synchronized void clear () {
+        for (int i = 0; i < _counts.length(); i += 1) {
+            _counts.set(i, 0);
+        }
+        _top.clear();
+        _threshold = 0;
+    }
+}
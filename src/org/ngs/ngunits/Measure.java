@@ -0,0 +1,162 @@
+package org.ngs.ngunits;
+
+import org.ngs.ngunits.format.UnitFormat;
+import org.ngs.ngunits.quantity.Quantity;
+
+/**
+ * A <code>double</code> value stated in a unit, such as 12.5 km.
+ * <p>
+ * Arithmetic on two measures in different units converts the second
+ * operand to the unit of the first, using the converter returned by
+ * {@link Unit#getConverterTo}, which the default unit delegate caches; no
+ * converter is built per operation. Measures are immutable and have no
+ * identity, so short-lived intermediate results can be eliminated by the
+ * JIT's escape analysis.
+ *
+ * @param <Q> the quantity measured.
+ */
+public final class Measure<Q extends Quantity<Q>> implements Comparable<Measure<Q>>
+{
+    /** */
+    private final double _value;
+
+    /** */
+    private final Unit<Q> _unit;
+
+    /** */
+    private Measure (double value, Unit<Q> unit) {
+        _value = value;
+        _unit = unit;
+    }
+
+    /**
+     * Returns the measure of the given value in the given unit.
+     * @param value the value.
+     * @param unit the unit in which the value is stated.
+     */
+    public static <Q extends Quantity<Q>> Measure<Q> valueOf (double value, Unit<Q> unit) {
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+        return new Measure<Q>(value, unit);
+    }
+
+    /** Returns the value of this measure, in its own unit. */
+    public double getValue () {
+        return _value;
+    }
+
+    /** */
+    public Unit<Q> getUnit () {
+        return _unit;
+    }
+
+    /**
+     * Returns the value of this measure in the given unit.
+     * @throws UnconvertibleException if the units are not compatible.
+     */
+    public double doubleValue (Unit<Q> unit) {
+        if ((unit == _unit) || unit.equals(_unit)) {
+            return _value;
+        }
+        return _unit.getConverterTo(unit).convert(_value);
+    }
+
+    /**
+     * Returns this measure stated in the given unit.
+     * @throws UnconvertibleException if the units are not compatible.
+     */
+    public Measure<Q> to (Unit<Q> unit) {
+        if ((unit == _unit) || unit.equals(_unit)) {
+            return this;
+        }
+        return new Measure<Q>(_unit.getConverterTo(unit).convert(_value), unit);
+    }
+
+    /**
+     * Returns the sum of this measure and another, in the unit of this
+     * measure. As with any conversion, adding measures in units with an
+     * offset (such as degrees Celsius) adds their converted values.
+     * @throws UnconvertibleException if the units are not compatible.
+     */
+    public Measure<Q> plus (Measure<Q> that) {
+        return new Measure<Q>(_value + that.doubleValue(_unit), _unit);
+    }
+
+    /**
+     * Returns the difference of this measure and another, in the unit of
+     * this measure.
+     * @throws UnconvertibleException if the units are not compatible.
+     */
+    public Measure<Q> minus (Measure<Q> that) {
+        return new Measure<Q>(_value - that.doubleValue(_unit), _unit);
+    }
+
+    /** Returns this measure multiplied by a dimensionless factor. */
+    public Measure<Q> times (double factor) {
+        return new Measure<Q>(_value * factor, _unit);
+    }
+
+    /** Returns the product of this measure and another, in the product of their units. */
+    public Measure<?> times (Measure<?> that) {
+        return product(_value * that._value, _unit.multiply(that._unit));
+    }
+
+    /** Returns this measure divided by a dimensionless divisor. */
+    public Measure<Q> divide (double divisor) {
+        return new Measure<Q>(_value / divisor, _unit);
+    }
+
+    /** Returns the quotient of this measure and another, in the quotient of their units. */
+    public Measure<?> divide (Measure<?> that) {
+        return product(_value / that._value, _unit.divide(that._unit));
+    }
+
+    /** Captures the quantity of a product or quotient unit, so no raw type is needed. */
+    private static Measure<?> product (double value, Unit<?> unit) {
+        return of(value, unit);
+    }
+
+    /** */
+    private static <T extends Quantity<T>> Measure<T> of (double value, Unit<T> unit) {
+        return new Measure<T>(value, unit);
+    }
+
+    /**
+     * Compares this measure to another, after converting the other to the
+     * unit of this measure.
+     * @throws UnconvertibleException if the units are not compatible.
+     */
+    public int compareTo (Measure<Q> that) {
+        return Double.compare(_value, that.doubleValue(_unit));
+    }
+
+    /**
+     * Indicates if the given object is a measure with the same value and
+     * unit as this one. Measures of the same amount in different units are
+     * not equal; use {@link #compareTo} to compare amounts.
+     */
+    @Override
+    public boolean equals (Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Measure)) {
+            return false;
+        }
+        Measure<?> that = (Measure<?>)obj;
+        return (Double.doubleToLongBits(_value) == Double.doubleToLongBits(that._value)) &&
+               _unit.equals(that._unit);
+    }
+
+    @Override
+    public int hashCode () {
+        long bits = Double.doubleToLongBits(_value);
+        return 31 * (int)(bits ^ (bits >>> 32)) + _unit.hashCode();
+    }
+
+    @Override
+    public String toString () {
+        return _value + " " + UnitFormat.getInstance().format(_unit);
+    }
+}
@@ -1,8 +1,8 @@
 package org.ngs.ngunits;
 
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.ngs.ngunits.unit.DefaultUnitDelegate;
 import org.ngs.ngunits.unit.UnitDelegate;
 
@@ -10,14 +10,15 @@ public abstract class SystemOfUnits
 {   
     protected static final UnitDelegate DELEGATE = DefaultUnitDelegate.INSTANCE;
     
-    private static final HashSet<Unit<?>> UNITS = new HashSet<Unit<?>>();
+    /** The keys are the units; units may be added while others are reading. */
+    private static final ConcurrentHashMap<Unit<?>,Boolean> UNITS = new ConcurrentHashMap<Unit<?>,Boolean>();
     
     public static Set<Unit<?>> getUnits () {
-        return Collections.unmodifiableSet(UNITS);
+        return Collections.unmodifiableSet(UNITS.keySet());
     }
     
     protected static Unit u (Unit unit) {
-        UNITS.add(unit);
+        UNITS.putIfAbsent(unit, Boolean.TRUE);
         return unit;
     }
 }
@@ -7,6 +7,9 @@
  */
 package org.ngs.ngunits;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
 import java.util.List;
 
 /**
@@ -62,6 +65,166 @@ public interface UnitConverter {
      */
     double convert (double value);
     
+    /**
+     * Converts a range of <code>double</code> values. The value at
+     * <code>src[srcOffset + i]</code> is converted and stored at
+     * <code>dst[dstOffset + i]</code>, for each <code>i</code> from
+     * <code>0</code> to <code>length - 1</code>. The result is the same as
+     * calling {@link #convert(double)} on each value, but avoids a method
+     * call per value. The source and destination may be the same array,
+     * and the ranges may overlap.
+     *
+     * @param src
+     *            the values to convert.
+     * @param srcOffset
+     *            the index of the first value to convert in <code>src</code>.
+     * @param dst
+     *            the array receiving the converted values.
+     * @param dstOffset
+     *            the index at which to store the first converted value in
+     *            <code>dst</code>.
+     * @param length
+     *            the number of values to convert.
+     * @throws IndexOutOfBoundsException
+     *            if either range is outside its array.
+     */
+    void convert (double[] src, int srcOffset, double[] dst, int dstOffset, int length);
+
+    /**
+     * Converts a range of <code>double</code> values in place. Equivalent to
+     * <code>convert(values, offset, values, offset, length)</code>.
+     *
+     * @param values
+     *            the values to convert, replaced by the converted values.
+     * @param offset
+     *            the index of the first value to convert.
+     * @param length
+     *            the number of values to convert.
+     * @throws IndexOutOfBoundsException
+     *            if the range is outside the array.
+     */
+    void convert (double[] values, int offset, int length);
+
+    /**
+     * Converts a <code>float</code> value. The result is within two units
+     * in the last place of <code>(float)convert((double)value)</code> when
+     * both are in the normal <code>float</code> range. Scaling converters
+     * compute in single precision with a precomputed <code>float</code>
+     * factor, and other converters compute in double precision and round
+     * the result once. (The method is not an overload of
+     * {@link #convert(double)} so that existing calls with integer
+     * arguments keep converting in double precision.)
+     *
+     * @param value
+     *            the numeric value to convert.
+     * @return the <code>float</code> value after conversion.
+     */
+    float convertFloat (float value);
+
+    /**
+     * Converts a range of <code>float</code> values, as
+     * {@link #convertFloat(float)} would. Otherwise the same as
+     * {@link #convert(double[], int, double[], int, int)}.
+     *
+     * @param src
+     *            the values to convert.
+     * @param srcOffset
+     *            the index of the first value to convert in <code>src</code>.
+     * @param dst
+     *            the array receiving the converted values.
+     * @param dstOffset
+     *            the index at which to store the first converted value in
+     *            <code>dst</code>.
+     * @param length
+     *            the number of values to convert.
+     * @throws IndexOutOfBoundsException
+     *            if either range is outside its array.
+     */
+    void convert (float[] src, int srcOffset, float[] dst, int dstOffset, int length);
+
+    /**
+     * Converts a range of <code>float</code> values in place. Equivalent to
+     * <code>convert(values, offset, values, offset, length)</code>.
+     *
+     * @param values
+     *            the values to convert, replaced by the converted values.
+     * @param offset
+     *            the index of the first value to convert.
+     * @param length
+     *            the number of values to convert.
+     * @throws IndexOutOfBoundsException
+     *            if the range is outside the array.
+     */
+    void convert (float[] values, int offset, int length);
+
+    /**
+     * Converts the values remaining in a buffer, storing the results in
+     * another buffer. The values from the source buffer's position to its
+     * limit are converted and put in the destination buffer starting at its
+     * position, and the positions of both buffers are advanced by the
+     * number of values converted. Either buffer may be direct. The two
+     * buffers may share their contents only if the ranges are the same or
+     * do not overlap.
+     *
+     * @param src
+     *            the values to convert.
+     * @param dst
+     *            the buffer receiving the converted values.
+     * @throws java.nio.BufferOverflowException
+     *            if there is not enough room remaining in <code>dst</code>.
+     * @throws java.nio.ReadOnlyBufferException
+     *            if <code>dst</code> is read-only.
+     */
+    void convert (DoubleBuffer src, DoubleBuffer dst);
+
+    /**
+     * Converts the values remaining in a buffer in place, from its position
+     * to its limit. The position of the buffer is not changed.
+     *
+     * @param values
+     *            the values to convert, replaced by the converted values.
+     * @throws java.nio.ReadOnlyBufferException
+     *            if <code>values</code> is read-only.
+     */
+    void convert (DoubleBuffer values);
+
+    /**
+     * Converts the <code>double</code> values encoded in the bytes remaining
+     * in a buffer, storing the results in another buffer. This is the same
+     * as {@link #convert(DoubleBuffer, DoubleBuffer)} applied to views of
+     * the two buffers with the given byte order; the positions of both
+     * buffers are advanced by eight bytes per value converted, and any
+     * trailing bytes that do not make up a whole value are left alone.
+     * This can be used to convert memory-mapped files (or, on recent JDKs,
+     * the <code>asByteBuffer()</code> view of a memory segment) without
+     * copying the values to an array.
+     *
+     * @param src
+     *            the values to convert.
+     * @param dst
+     *            the buffer receiving the converted values.
+     * @param order
+     *            the byte order of the values in both buffers.
+     * @throws java.nio.BufferOverflowException
+     *            if there is not enough room remaining in <code>dst</code>.
+     * @throws java.nio.ReadOnlyBufferException
+     *            if <code>dst</code> is read-only.
+     */
+    void convert (ByteBuffer src, ByteBuffer dst, ByteOrder order);
+
+    /**
+     * Converts the <code>double</code> values encoded in the bytes remaining
+     * in a buffer in place. The position of the buffer is not changed.
+     *
+     * @param values
+     *            the values to convert, replaced by the converted values.
+     * @param order
+     *            the byte order of the values.
+     * @throws java.nio.ReadOnlyBufferException
+     *            if <code>values</code> is read-only.
+     */
+    void convert (ByteBuffer values, ByteOrder order);
+    
     /**
      * Concatenates this converter with another converter. The resulting
      * converter is equivalent to first converting by the specified converter
@@ -0,0 +1,162 @@
+package org.ngs.ngunits;
+
+import java.text.Format;
+import java.util.Map;
+import org.ngs.ngunits.unit.AnnotatedUnit;
+import org.ngs.ngunits.unit.TransformedUnit;
+
+
+/**
+ * Hooks through which the library reports parsing, formatting, converter
+ * lookups and the creation of units as Java Flight Recorder events. The
+ * events use the <code>jdk.jfr</code> API, so they are compiled separately
+ * (see the <code>compile-jdk17</code> target) and loaded by reflection; if
+ * they are not on the class path, {@link #INSTANCE} is <code>null</code>
+ * and the library does nothing more than check it.
+ * <p>
+ * The events are named <code>org.ngs.ngunits.Parse</code>,
+ * <code>org.ngs.ngunits.Format</code>, <code>org.ngs.ngunits.Converter</code>,
+ * <code>org.ngs.ngunits.UnitCreation</code> and
+ * <code>org.ngs.ngunits.UserDefinition</code>, and are disabled by default:
+ * enable them in the settings of a recording to record them. The hooks can
+ * be removed altogether by setting the <code>org.ngs.ngunits.jfr</code>
+ * system property to <code>false</code>.
+ * <p>
+ * Each <code>begin</code> method returns an event that has been started,
+ * or <code>null</code> if the event is not being recorded; the event must
+ * be passed to the corresponding <code>end</code> method when the
+ * operation is finished. Events that are never ended are discarded.
+ */
+public abstract class UnitEvents
+{
+    /** How a cache was used by an operation. */
+    public static enum CacheOutcome {
+
+        /** The result was in the cache. */
+        HIT,
+
+        /** The result was computed and added to the cache. */
+        MISS,
+
+        /** The result was computed without a cache. */
+        UNCACHED
+    }
+
+    /** The hooks, or <code>null</code> if they are not available. */
+    public static final UnitEvents INSTANCE = load();
+
+    /** */
+    private static UnitEvents load () {
+        try {
+            if ("false".equalsIgnoreCase(System.getProperty("org.ngs.ngunits.jfr"))) {
+                return null;
+            }
+            Class<?> c = Class.forName("org.ngs.ngunits.UnitEventsImpl");
+            return (UnitEvents)c.newInstance();
+        } catch (Throwable e) {
+            // Not compiled in, or the jdk.jfr module is missing.
+            return null;
+        }
+    }
+
+    /** */
+    UnitEvents () { }
+
+    /** */
+    public abstract Object beginParse ();
+
+    /**
+     * @param result the unit, or <code>null</code> if the source could not be parsed
+     */
+    public abstract void endParse (Object event, Format format, CharSequence source, Unit<?> result,
+                                   CacheOutcome outcome);
+
+    /** */
+    public abstract Object beginFormat ();
+
+    /** */
+    public abstract void endFormat (Object event, Format format, Unit<?> unit, String text,
+                                    CacheOutcome outcome);
+
+    /** */
+    public abstract Object beginConverter ();
+
+    /**
+     * @param converter the converter, or <code>null</code> if the units are not compatible
+     */
+    public abstract void endConverter (Object event, Unit<?> from, Unit<?> to, UnitConverter converter,
+                                       CacheOutcome outcome);
+
+    /** */
+    public abstract Object beginUnitCreation ();
+
+    /**
+     * @param created the unit that was created
+     * @param result the unit that was returned, which is an equal unit
+     *   created earlier if units are interned
+     */
+    public abstract void endUnitCreation (Object event, Unit<?> created, Unit<?> result);
+
+    /** */
+    public abstract Object beginDefinition ();
+
+    /**
+     * @param unit the unit defined for the symbol, or <code>null</code> if it could not be defined
+     */
+    public abstract void endDefinition (Object event, String symbol, Unit<?> unit);
+
+    /**
+     * Returns a description of a unit built from the symbols of its factors,
+     * such as <code>m*s^-2</code> or <code>(1000.0*m)</code>. Unlike a
+     * format it reads no symbol map and reports nothing to {@link UnitMetrics}.
+     */
+    static String describe (Unit<?> unit) {
+        StringBuilder result = new StringBuilder();
+        describe(unit, result);
+        return result.toString();
+    }
+
+    /** */
+    private static void describe (Unit<?> unit, StringBuilder out) {
+        if (unit instanceof AnnotatedUnit) {
+            AnnotatedUnit annotated = (AnnotatedUnit)unit;
+            describe(annotated.getParent(), out);
+            out.append('{').append(annotated.getAnnotation()).append('}');
+            return;
+        }
+        String symbol = unit.getSymbol();
+        Map<Unit, Integer> factors = unit.getProductUnits();
+        if (symbol != null) {
+            out.append(symbol);
+        } else if (factors != null) {
+            if (factors.isEmpty()) {
+                out.append('1');
+            }
+            boolean first = true;
+            for (Map.Entry<Unit, Integer> factor : factors.entrySet()) {
+                if (!first) {
+                    out.append('*');
+                }
+                first = false;
+                describe(factor.getKey(), out);
+                if (factor.getValue().intValue() != 1) {
+                    out.append('^').append(factor.getValue());
+                }
+            }
+        } else if (unit instanceof TransformedUnit) {
+            TransformedUnit transformed = (TransformedUnit)unit;
+            UnitConverter toParent = transformed.toParent();
+            if (toParent.isLinear()) {
+                out.append('(').append(toParent.convert(1.0)).append('*');
+                describe(transformed.getParent(), out);
+                out.append(')');
+            } else {
+                out.append(toParent.getClass().getSimpleName()).append('(');
+                describe(transformed.getParent(), out);
+                out.append(')');
+            }
+        } else {
+            out.append(unit.getClass().getSimpleName());
+        }
+    }
+}
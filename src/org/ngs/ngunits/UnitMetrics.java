@@ -0,0 +1,79 @@
+package org.ngs.ngunits;
+
+import java.text.Format;
+
+
+/**
+ * Receives counts of what the library does: parses, cache hits and misses,
+ * converter lookups and failures, and symbols that were not found. The
+ * methods of this class do nothing; subclasses override those they need.
+ * Install an instance with {@link #setInstance}; by default none is
+ * installed and the library only calls the no-op methods of {@link #NONE}.
+ * <p>
+ * The methods are called on the threads doing the work, often while
+ * parsing, so they must be thread-safe and should be quick.
+ * {@link CountingUnitMetrics} counts everything and can be registered as
+ * a JMX MBean.
+ */
+public abstract class UnitMetrics
+{
+    /** The caches that report hits and misses. */
+    public static enum Cache {
+
+        /** The parse results of a format. */
+        PARSE,
+
+        /** The formatted text of a format. */
+        FORMAT,
+
+        /** The converters of {@link org.ngs.ngunits.unit.DefaultUnitDelegate}. */
+        CONVERTER
+    }
+
+    /** Metrics that ignore everything. */
+    public static final UnitMetrics NONE = new UnitMetrics() { };
+
+    /** */
+    private static volatile UnitMetrics _instance = NONE;
+
+    /** Returns the installed metrics, or {@link #NONE}. */
+    public static UnitMetrics getInstance () {
+        return _instance;
+    }
+
+    /**
+     * Installs the metrics that the library reports to.
+     * @param metrics the metrics, or <code>null</code> to report to none
+     */
+    public static void setInstance (UnitMetrics metrics) {
+        _instance = (metrics != null) ? metrics : NONE;
+    }
+
+    /**
+     * Called when a format has parsed a unit, whether from its cache or not.
+     * @param succeeded <code>false</code> if the source was not a valid unit
+     */
+    public void parsed (Format format, boolean succeeded) { }
+
+    /** */
+    public void cacheHit (Cache cache) { }
+
+    /** */
+    public void cacheMiss (Cache cache) { }
+
+    /**
+     * Called when a converter between two units has been found, including
+     * the identity converter from a unit to itself.
+     */
+    public void converterFound (Unit<?> from, Unit<?> to) { }
+
+    /** Called when there is no converter between two units. */
+    public void unconvertible (Unit<?> from, Unit<?> to) { }
+
+    /**
+     * Called when a format finds no unit for a symbol, which is the given
+     * region of a character sequence, once its symbol map has tried every
+     * way of resolving it, including units that the map defines itself.
+     */
+    public void unknownSymbol (CharSequence symbol, int start, int end) { }
+}
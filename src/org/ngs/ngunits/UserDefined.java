@@ -1,8 +1,7 @@
 package org.ngs.ngunits;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import org.ngs.ngunits.format.UnitFormat;
 import org.ngs.ngunits.format.SymbolMap;
@@ -17,50 +16,84 @@ public final class UserDefined extends SystemOfUnits
         /** */
         private static final Pattern RESERVED_CHARS = Pattern.compile("[\u0000-\u001F\\(\\)\\*\\+\\-\\./0-9:\\^\u00B2\u00B3\u00B7\u00B9\u2070\u2074-\u2079]"); 
         
-        /** */
-        private Map<String, Unit<?>> _symbolToUnit;
+        /** Read and written without locking; the first unit published for a symbol wins. */
+        private final ConcurrentHashMap<String, Unit<?>> _symbolToUnit;
 
         /** */
-        private Map<Unit<?>, String> _unitToSymbol;
+        private final ConcurrentHashMap<Unit<?>, String> _unitToSymbol;
         
         /** */
-        private boolean _definitionEnabled;
+        private volatile boolean _definitionEnabled;
         
         /** */
-        protected UserSymbolMap (ResourceBundle rb) {
-            super(rb);
-            _symbolToUnit = new HashMap<String, Unit<?>>();
-            _unitToSymbol = new HashMap<Unit<?>, String>();
+        protected UserSymbolMap (String baseName) {
+            super(ResourceBundle.getBundle(baseName), baseName);
+            _symbolToUnit = new ConcurrentHashMap<String, Unit<?>>();
+            _unitToSymbol = new ConcurrentHashMap<Unit<?>, String>();
             _definitionEnabled = true;
         }
         
         @Override
         public Entry lookup (String symbol) {
             Entry result = super.lookup(symbol);
-            if (result == null) {
-                String validatedSymbol = makeValidUnitName(symbol);
-                if (validatedSymbol == null) {
-                    return null;
-                } else if (!validatedSymbol.equals(symbol)) {
-                    return lookup(validatedSymbol);
+            return (result != null) ? result : lookupUserUnit(symbol);
+        }
+        
+        /** Returns the user unit for a symbol that is not in the bundle, defining it if necessary. */
+        private Entry lookupUserUnit (String symbol) {
+            String validatedSymbol = makeValidUnitName(symbol);
+            if (validatedSymbol == null) {
+                return null;
+            } else if (!validatedSymbol.equals(symbol)) {
+                return lookup(validatedSymbol);
+            } else {
+                Unit userUnit = _symbolToUnit.get(symbol);
+                if ((userUnit == null) && _definitionEnabled) {
+                    userUnit = define(symbol);
+                }
+                if (userUnit != null) {
+                    return new SymbolMap.Entry(null, userUnit);
                 } else {
-                    Unit userUnit = _symbolToUnit.get(symbol);
-                    if ((userUnit == null) && _definitionEnabled) {
-                        userUnit = u(DELEGATE.one().alternate(symbol));
-                        _symbolToUnit.put(symbol, userUnit);
-                        _unitToSymbol.put(userUnit, symbol);
-                    }
-                    if (userUnit != null) {
-                        return new SymbolMap.Entry(null, userUnit);
-                    } else {
-                        return null;
-                    }
+                    return null;
                 }
-            } else {
-                return result;
             }
         }
         
+        /**
+         * Returns the unit defined for a valid symbol, defining it if no 
+         * other thread has. Threads that define the same symbol at once each
+         * create an equal unit, and all of them return the one published
+         * first; no lock is taken. Returns <code>null</code> if the symbol
+         * belongs to a unit that is not in this map.
+         */
+        private Unit<?> define (String symbol) {
+            UnitEvents events = UnitEvents.INSTANCE;
+            Object event = (events == null) ? null : events.beginDefinition();
+            Unit<?> userUnit;
+            try {
+                userUnit = DELEGATE.one().alternate(symbol);
+            } catch (IllegalArgumentException e) {
+                userUnit = null;
+            }
+            if (userUnit != null) {
+                // Publish the symbol of the unit before the unit itself, so
+                // any thread that parses the unit can also format it.
+                _unitToSymbol.put(userUnit, symbol);
+                Unit<?> published = _symbolToUnit.putIfAbsent(symbol, userUnit);
+                userUnit = (published != null) ? published : u(userUnit);
+            }
+            if (event != null) {
+                events.endDefinition(event, symbol, userUnit);
+            }
+            return userUnit;
+        }
+        
+        @Override
+        public Entry lookup (CharSequence symbol, int start, int end) {
+            Entry result = super.lookup(symbol, start, end);
+            return (result != null) ? result : lookupUserUnit(symbol.subSequence(start, end).toString());
+        }
+        
         @Override
         public String getSymbol (Unit<?> unit) {
             String result = super.getSymbol(unit);
@@ -79,6 +112,7 @@ public final class UserDefined extends SystemOfUnits
         /** */
         public void setDefinitionEnabled (boolean newValue) {
             _definitionEnabled = newValue;
+            modified();
         }
         
         
@@ -102,7 +136,7 @@ public final class UserDefined extends SystemOfUnits
     }
     
     /** */
-    public static UnitFormat FORMAT = UnitFormat.getInstance(new UserSymbolMap(ResourceBundle.getBundle("org.ngs.ngunits.format.UnitFormat")));
+    public static UnitFormat FORMAT = UnitFormat.getInstance(new UserSymbolMap("org.ngs.ngunits.format.UnitFormat"));
     
     /**
      * Default constructor (prevents this class from being instantiated).
@@ -1,5 +1,10 @@
 package org.ngs.ngunits.converter;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -11,6 +16,284 @@ public abstract class AbstractUnitConverter implements UnitConverter {
 
     public static final UnitConverter IDENTITY = new Identity();
     
+    /** The number of values copied out of a buffer at a time. */
+    private static final int BUFFER_BLOCK_SIZE = 1024;
+    
+    /**
+     * Returns the normal form of the given converter: a converter that
+     * performs the same conversion in as few steps as possible. Every run
+     * of consecutive {@link RationalConverter}, {@link MultiplyConverter},
+     * {@link AddConverter} and {@link AffineConverter} steps is fused into
+     * a single converter (an <code>AffineConverter</code> if the run
+     * includes an offset, otherwise an exact <code>RationalConverter</code>
+     * where possible), and adjacent {@link LogConverter.Log} and
+     * {@link LogConverter.Exp} steps of the same base cancel out.
+     * <p>
+     * The normal form is meant for converting values. It does not preserve
+     * the structure of the original converter, so it should not be used to
+     * define units that will be formatted.
+     * @param converter the converter to normalize.
+     * @return the normal form of <code>converter</code>.
+     */
+    public static UnitConverter normalize (UnitConverter converter) {
+        List<UnitConverter> steps = new ArrayList<UnitConverter>();
+        flatten(converter, steps);
+        List<UnitConverter> fused = new ArrayList<UnitConverter>(steps.size());
+        // The pending run of affine steps: x -> scale(x) + offset
+        UnitConverter scale = IDENTITY;
+        double offset = 0.0;
+        for (UnitConverter step : steps) {
+            if (step.isIdentity()) {
+                // skip
+            } else if ((step instanceof RationalConverter) || (step instanceof MultiplyConverter)) {
+                scale = step.concatenate(scale);
+                offset = step.convert(offset);
+            } else if (step instanceof AddConverter) {
+                offset += ((AddConverter)step).getOffset();
+            } else if (step instanceof AffineConverter) {
+                scale = scaleOf(step).concatenate(scale);
+                offset = ((AffineConverter)step).getFactor() * offset + ((AffineConverter)step).getOffset();
+            } else {
+                int last = fused.size() - 1;
+                if (scale.isIdentity() && ((float)offset == 0.0f) && 
+                    (last >= 0) && cancels(fused.get(last), step)) {
+                    fused.remove(last--);
+                    // Resume the affine run that preceded the cancelled pair, if any.
+                    if ((last >= 0) && isAffine(fused.get(last))) {
+                        UnitConverter previous = fused.remove(last);
+                        scale = scaleOf(previous);
+                        offset = offsetOf(previous);
+                    }
+                } else {
+                    addAffine(scale, offset, fused);
+                    scale = IDENTITY;
+                    offset = 0.0;
+                    fused.add(step);
+                }
+            }
+        }
+        addAffine(scale, offset, fused);
+        if (fused.isEmpty()) {
+            return IDENTITY;
+        }
+        UnitConverter result = fused.get(0);
+        for (int i = 1; i < fused.size(); i += 1) {
+            result = new Compound(result, fused.get(i));
+        }
+        return result;
+    }
+    
+    /** Appends the converters making up <code>converter</code> to <code>steps</code>, in the order they are applied. */
+    private static void flatten (UnitConverter converter, List<UnitConverter> steps) {
+        if (converter instanceof Compound) {
+            for (UnitConverter c : ((Compound)converter)._contents) {
+                flatten(c, steps);
+            }
+        } else {
+            steps.add(converter);
+        }
+    }
+    
+    /** Indicates if <code>second</code> undoes <code>first</code>. */
+    private static boolean cancels (UnitConverter first, UnitConverter second) {
+        return (((first instanceof LogConverter.Log) && (second instanceof LogConverter.Exp)) ||
+                ((first instanceof LogConverter.Exp) && (second instanceof LogConverter.Log))) &&
+               (((LogConverter)first).getBase() == ((LogConverter)second).getBase());
+    }
+    
+    /** Appends the converter for <code>scale(x) + offset</code> to <code>steps</code>, unless it is the identity. */
+    private static void addAffine (UnitConverter scale, double offset, List<UnitConverter> steps) {
+        if ((float)offset == 0.0f) {
+            if (!scale.isIdentity()) {
+                steps.add(scale);
+            }
+        } else if (scale.isIdentity()) {
+            steps.add(new AddConverter(offset));
+        } else {
+            steps.add(new AffineConverter(factorOf(scale), offset));
+        }
+    }
+    
+    /**
+     * Returns the simplest converter for <code>factor * x + offset</code>:
+     * the identity, a {@link MultiplyConverter}, an {@link AddConverter}
+     * or, if there is both a factor and an offset, an {@link AffineConverter}.
+     */
+    static UnitConverter affine (double factor, double offset) {
+        if ((float)offset == 0.0f) {
+            return ((float)factor == 1.0f) ? IDENTITY : new MultiplyConverter(factor);
+        } else if ((float)factor == 1.0f) {
+            return new AddConverter(offset);
+        } else {
+            return new AffineConverter(factor, offset);
+        }
+    }
+    
+    /** Indicates if the given converter is one of the affine (<code>factor * x + offset</code>) converters. */
+    static boolean isAffine (UnitConverter converter) {
+        return (converter instanceof AffineConverter) ||
+               (converter instanceof AddConverter) ||
+               (converter instanceof MultiplyConverter) ||
+               (converter instanceof RationalConverter) ||
+               converter.isIdentity();
+    }
+    
+    /** Returns the scaling part of an {@link #isAffine affine} converter, as exactly as possible. */
+    private static UnitConverter scaleOf (UnitConverter converter) {
+        if ((converter instanceof RationalConverter) || (converter instanceof MultiplyConverter)) {
+            return converter;
+        }
+        double factor = factorOf(converter);
+        return ((float)factor == 1.0f) ? IDENTITY : new MultiplyConverter(factor);
+    }
+    
+    /** Returns the scaling factor of an {@link #isAffine affine} converter. */
+    static double factorOf (UnitConverter converter) {
+        if (converter instanceof AffineConverter) {
+            return ((AffineConverter)converter).getFactor();
+        } else if (converter instanceof MultiplyConverter) {
+            return ((MultiplyConverter)converter).getFactor();
+        } else if (converter instanceof RationalConverter) {
+            return ((RationalConverter)converter).getFactor();
+        } else {
+            return 1.0;
+        }
+    }
+    
+    /** Returns the offset of an {@link #isAffine affine} converter. */
+    static double offsetOf (UnitConverter converter) {
+        if (converter instanceof AffineConverter) {
+            return ((AffineConverter)converter).getOffset();
+        } else if (converter instanceof AddConverter) {
+            return ((AddConverter)converter).getOffset();
+        } else {
+            return 0.0;
+        }
+    }
+    
+    public void convert (double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        checkRange(src.length, srcOffset, length);
+        checkRange(dst.length, dstOffset, length);
+        if ((src == dst) && (srcOffset != dstOffset) && 
+            (srcOffset < dstOffset + length) && (dstOffset < srcOffset + length)) {
+            // Overlapping ranges: move the values first, then convert them in place.
+            System.arraycopy(src, srcOffset, dst, dstOffset, length);
+            convertRange(dst, dstOffset, dst, dstOffset, length);
+        } else {
+            convertRange(src, srcOffset, dst, dstOffset, length);
+        }
+    }
+    
+    public void convert (double[] values, int offset, int length) {
+        checkRange(values.length, offset, length);
+        convertRange(values, offset, values, offset, length);
+    }
+    
+    public float convertFloat (float value) {
+        return (float)convert((double)value);
+    }
+    
+    public void convert (float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        checkRange(src.length, srcOffset, length);
+        checkRange(dst.length, dstOffset, length);
+        if ((src == dst) && (srcOffset != dstOffset) && 
+            (srcOffset < dstOffset + length) && (dstOffset < srcOffset + length)) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, length);
+            convertRange(dst, dstOffset, dst, dstOffset, length);
+        } else {
+            convertRange(src, srcOffset, dst, dstOffset, length);
+        }
+    }
+    
+    public void convert (float[] values, int offset, int length) {
+        checkRange(values.length, offset, length);
+        convertRange(values, offset, values, offset, length);
+    }
+    
+    public void convert (DoubleBuffer src, DoubleBuffer dst) {
+        int length = src.remaining();
+        if (dst.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        if (src.hasArray() && dst.hasArray()) {
+            convert(src.array(), src.arrayOffset() + src.position(), 
+                    dst.array(), dst.arrayOffset() + dst.position(), length);
+            src.position(src.position() + length);
+            dst.position(dst.position() + length);
+        } else {
+            // Convert through a scratch array, a block at a time.
+            double[] block = new double[Math.min(length, BUFFER_BLOCK_SIZE)];
+            for (int i = 0; i < length; i += block.length) {
+                int n = Math.min(block.length, length - i);
+                src.get(block, 0, n);
+                convertRange(block, 0, block, 0, n);
+                dst.put(block, 0, n);
+            }
+        }
+    }
+    
+    public void convert (DoubleBuffer values) {
+        convert(values.duplicate(), values.duplicate());
+    }
+    
+    public void convert (ByteBuffer src, ByteBuffer dst, ByteOrder order) {
+        int length = src.remaining() / 8;
+        DoubleBuffer in = src.duplicate().order(order).asDoubleBuffer();
+        DoubleBuffer out = dst.duplicate().order(order).asDoubleBuffer();
+        convert(in, out);
+        src.position(src.position() + 8 * length);
+        dst.position(dst.position() + 8 * length);
+    }
+    
+    public void convert (ByteBuffer values, ByteOrder order) {
+        convert(values.duplicate(), values.duplicate(), order);
+    }
+    
+    /**
+     * Converts a range of values. Called by the bulk <code>convert</code>
+     * methods once the ranges have been checked; the ranges are either
+     * disjoint or identical. Subclasses should override this with a simple
+     * loop over the range.
+     */
+    protected void convertRange (double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i += 1) {
+            dst[dstOffset + i] = convert(src[srcOffset + i]);
+        }
+    }
+    
+    /**
+     * Converts a range of <code>float</code> values. Called by the bulk
+     * <code>convert</code> methods once the ranges have been checked; the
+     * ranges are either disjoint or identical.
+     */
+    protected void convertRange (float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i += 1) {
+            dst[dstOffset + i] = convertFloat(src[srcOffset + i]);
+        }
+    }
+    
+    /** */
+    private static void checkRange (int arrayLength, int offset, int length) {
+        if ((offset < 0) || (length < 0) || (offset > arrayLength - length)) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + 
+                                                ", array length " + arrayLength);
+        }
+    }
+    
+    /**
+     * Returns <code>factor</code> as a <code>float</code> if that loses no
+     * more than rounding, or <code>NaN</code> if the factor is out of the
+     * normal <code>float</code> range and cannot be used for single
+     * precision arithmetic.
+     */
+    static float floatFactor (double factor) {
+        float f = (float)factor;
+        return (Math.abs(f) >= 0x1p-126f) && (Math.abs(f) <= Float.MAX_VALUE) ? f : Float.NaN;
+    }
+    
     public boolean isIdentity() {
         return false;
     }
@@ -30,11 +313,22 @@ public abstract class AbstractUnitConverter implements UnitConverter {
     @Override
     public boolean equals(Object cvtr) {
         if (!(cvtr instanceof UnitConverter)) return false;
-        return this.concatenate(((UnitConverter)cvtr).inverse()) == IDENTITY;        
+        UnitConverter that = (UnitConverter)cvtr;
+        if (isAffine(this) && isAffine(that)) {
+            // Not by concatenation: only AffineConverter absorbs the other affine converters.
+            return ((float)factorOf(this) == (float)factorOf(that)) &&
+                   ((float)offsetOf(this) == (float)offsetOf(that));
+        }
+        return this.concatenate(that.inverse()) == IDENTITY;        
     }
 
     @Override
     public int hashCode () {
+        if (isAffine(this)) {
+            // Adding 0.0f turns -0.0f into 0.0f, which equals() does not tell apart.
+            return 31 * Float.floatToIntBits((float)factorOf(this) + 0.0f) + 
+                   Float.floatToIntBits((float)offsetOf(this) + 0.0f);
+        }
         return Float.floatToIntBits((float)convert(1.0));
     }
     
@@ -63,6 +357,25 @@ public abstract class AbstractUnitConverter implements UnitConverter {
             return value;
         }
         
+        @Override
+        protected void convertRange (double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+            if ((src != dst) || (srcOffset != dstOffset)) {
+                System.arraycopy(src, srcOffset, dst, dstOffset, length);
+            }
+        }
+        
+        @Override
+        public float convertFloat (float value) {
+            return value;
+        }
+        
+        @Override
+        protected void convertRange (float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+            if ((src != dst) || (srcOffset != dstOffset)) {
+                System.arraycopy(src, srcOffset, dst, dstOffset, length);
+            }
+        }
+        
         @Override
         public boolean equals (Object that) {
             return (that instanceof UnitConverter) && ((UnitConverter)that).isIdentity();
@@ -74,6 +387,9 @@ public abstract class AbstractUnitConverter implements UnitConverter {
      */
     public static final class Compound extends AbstractUnitConverter {
 
+        /** The number of values converted by each step at a time. */
+        private static final int BLOCK_SIZE = 512;
+
         private final List<UnitConverter> _contents;
         
         Compound (UnitConverter first, UnitConverter second) {
@@ -111,5 +427,34 @@ public abstract class AbstractUnitConverter implements UnitConverter {
         public double convert (double value) {
             return _contents.get(1).convert(_contents.get(0).convert(value));
         }
+        
+        @Override
+        protected void convertRange (double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+            UnitConverter first = _contents.get(0);
+            UnitConverter second = _contents.get(1);
+            // Work in blocks so that each block is still in cache for the second step.
+            for (int i = 0; i < length; i += BLOCK_SIZE) {
+                int n = Math.min(BLOCK_SIZE, length - i);
+                first.convert(src, srcOffset + i, dst, dstOffset + i, n);
+                second.convert(dst, dstOffset + i, n);
+            }
+        }
+        
+        @Override
+        protected void convertRange (float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+            // Keep the intermediate values in double precision, so the result
+            // is rounded once rather than once per step.
+            double[] block = new double[Math.min(length, BLOCK_SIZE)];
+            for (int i = 0; i < length; i += block.length) {
+                int n = Math.min(block.length, length - i);
+                for (int j = 0; j < n; j += 1) {
+                    block[j] = src[srcOffset + i + j];
+                }
+                convertRange(block, 0, block, 0, n);
+                for (int j = 0; j < n; j += 1) {
+                    dst[dstOffset + i + j] = (float)block[j];
+                }
+            }
+        }
     }
 }
@@ -48,6 +48,33 @@ public final class AddConverter extends AbstractUnitConverter {
         return value + _offset;
     }
     
+    @Override
+    protected void convertRange (double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        double offset = _offset;
+        VectorKernel kernel = VectorKernel.INSTANCE;
+        if ((kernel != null) && (length >= VectorKernel.MIN_LENGTH)) {
+            kernel.add(src, srcOffset, dst, dstOffset, length, offset);
+            return;
+        }
+        for (int i = 0; i < length; i += 1) {
+            dst[dstOffset + i] = src[srcOffset + i] + offset;
+        }
+    }
+    
+    @Override
+    public float convertFloat (float value) {
+        // In double precision: a float offset could cancel badly near zero.
+        return (float)(value + _offset);
+    }
+    
+    @Override
+    protected void convertRange (float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        double offset = _offset;
+        for (int i = 0; i < length; i += 1) {
+            dst[dstOffset + i] = (float)(src[srcOffset + i] + offset);
+        }
+    }
+    
     public UnitConverter inverse () {
         return new AddConverter(- _offset);
     }
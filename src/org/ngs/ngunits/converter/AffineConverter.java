@@ -0,0 +1,88 @@
+package org.ngs.ngunits.converter;
+
+import org.ngs.ngunits.UnitConverter;
+
+/**
+ * <p> This class represents a converter multiplying numeric values by a
+ *     constant scaling factor and then adding a constant offset
+ *     (<code>factor * value + offset</code>). It is the fused form of a
+ *     chain of {@link RationalConverter}, {@link MultiplyConverter} and
+ *     {@link AddConverter} steps, as produced by
+ *     {@link AbstractUnitConverter#normalize(UnitConverter)}.</p>
+ *
+ * <p> Instances of this class are immutable.</p>
+ */
+public final class AffineConverter extends AbstractUnitConverter
+{
+    private final double _factor;
+
+    private final double _offset;
+
+    public AffineConverter (double factor, double offset) {
+        if (((float)factor == 1.0) && ((float)offset == 0.0))
+            throw new IllegalArgumentException("Identity converter not allowed");
+        _factor = factor;
+        _offset = offset;
+    }
+
+    public double getFactor() {
+        return _factor;
+    }
+
+    public double getOffset() {
+        return _offset;
+    }
+
+    @Override
+    public boolean isLinear() {
+        return _offset == 0.0;
+    }
+
+    @Override
+    public UnitConverter concatenate (UnitConverter converter) {
+        if (isAffine(converter)) {
+            // this(that(x)) = factor * (f * x + o) + offset
+            double factor = _factor * factorOf(converter);
+            double offset = _factor * offsetOf(converter) + _offset;
+            return affine(factor, offset);
+        } else {
+            return super.concatenate(converter);
+        }
+    }
+
+    public double convert (double value) {
+        return value * _factor + _offset;
+    }
+
+    @Override
+    protected void convertRange (double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        double factor = _factor;
+        double offset = _offset;
+        VectorKernel kernel = VectorKernel.INSTANCE;
+        if ((kernel != null) && (length >= VectorKernel.MIN_LENGTH)) {
+            kernel.multiplyAdd(src, srcOffset, dst, dstOffset, length, factor, offset);
+            return;
+        }
+        for (int i = 0; i < length; i += 1) {
+            dst[dstOffset + i] = src[srcOffset + i] * factor + offset;
+        }
+    }
+
+    @Override
+    public float convertFloat (float value) {
+        return (float)(value * _factor + _offset);
+    }
+
+    @Override
+    protected void convertRange (float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        double factor = _factor;
+        double offset = _offset;
+        for (int i = 0; i < length; i += 1) {
+            dst[dstOffset + i] = (float)(src[srcOffset + i] * factor + offset);
+        }
+    }
+
+    public UnitConverter inverse () {
+        return affine(1 / _factor, - _offset / _factor);
+    }
+}
@@ -42,6 +42,14 @@ public abstract class LogConverter extends AbstractUnitConverter
         public double convert (double value) {
             return Math.log(value) / _logOfBase;
         }
+
+        @Override
+        protected void convertRange (double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+            double logOfBase = _logOfBase;
+            for (int i = 0; i < length; i += 1) {
+                dst[dstOffset + i] = Math.log(src[srcOffset + i]) / logOfBase;
+            }
+        }
     }
     
     public static final class Exp extends LogConverter
@@ -57,5 +65,13 @@ public abstract class LogConverter extends AbstractUnitConverter
         public double convert (double value) {
             return Math.exp(value * _logOfBase);
         }
+
+        @Override
+        protected void convertRange (double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+            double logOfBase = _logOfBase;
+            for (int i = 0; i < length; i += 1) {
+                dst[dstOffset + i] = Math.exp(src[srcOffset + i] * logOfBase);
+            }
+        }
     }
 }
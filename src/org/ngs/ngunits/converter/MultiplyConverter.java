@@ -13,10 +13,14 @@ public final class MultiplyConverter extends AbstractUnitConverter
 {
     private final double _factor;
     
+    /** The factor for single precision conversions, <code>NaN</code> if out of range. */
+    private final float _floatFactor;
+    
     public MultiplyConverter (double factor) {
         if ((float)factor == 1.0)
             throw new IllegalArgumentException("Identity converter not allowed");
         _factor = factor;
+        _floatFactor = floatFactor(factor);
     }
     
     public double getFactor() {
@@ -33,9 +37,7 @@ public final class MultiplyConverter extends AbstractUnitConverter
                 return new MultiplyConverter(factor);
             }
         } else if (converter instanceof RationalConverter) {
-            double factor = _factor
-                    * ((RationalConverter) converter).getDividend()
-                    / ((RationalConverter) converter).getDivisor();
+            double factor = converter.convert(_factor);
             if (((float)factor) == 1.0f) {
                 return IDENTITY;
             } else {
@@ -50,6 +52,39 @@ public final class MultiplyConverter extends AbstractUnitConverter
         return value * _factor;
     }
     
+    @Override
+    protected void convertRange (double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        double factor = _factor;
+        VectorKernel kernel = VectorKernel.INSTANCE;
+        if ((kernel != null) && (length >= VectorKernel.MIN_LENGTH)) {
+            kernel.multiply(src, srcOffset, dst, dstOffset, length, factor);
+            return;
+        }
+        for (int i = 0; i < length; i += 1) {
+            dst[dstOffset + i] = src[srcOffset + i] * factor;
+        }
+    }
+    
+    @Override
+    public float convertFloat (float value) {
+        if (Float.isNaN(_floatFactor)) {
+            return super.convertFloat(value);
+        }
+        return value * _floatFactor;
+    }
+    
+    @Override
+    protected void convertRange (float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        float factor = _floatFactor;
+        if (Float.isNaN(factor)) {
+            super.convertRange(src, srcOffset, dst, dstOffset, length);
+            return;
+        }
+        for (int i = 0; i < length; i += 1) {
+            dst[dstOffset + i] = src[srcOffset + i] * factor;
+        }
+    }
+    
     public UnitConverter inverse () {
         return new MultiplyConverter(1 / _factor);
     }
@@ -1,16 +1,23 @@
 package org.ngs.ngunits.converter;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
 import org.ngs.ngunits.UnitConverter;
 
 
 /**
  * <p> This class represents a converter multiplying numeric values by an
- *     exact scaling factor (represented as the quotient of two 
- *     <code>long</code> numbers).</p>
- *  
+ *     exact scaling factor (represented as the quotient of two integers,
+ *     kept in lowest terms). Factors whose terms fit in a <code>long</code>
+ *     are handled with <code>long</code> arithmetic; larger ones, such as
+ *     long chains of prefixes, are kept exactly as <code>BigInteger</code>s.
+ *     The factor is only approximated as a <code>double</code> when values
+ *     are converted.</p>
+ *
  * <p> Instances of this class are immutable.</p>
  */
-public final class RationalConverter extends AbstractUnitConverter 
+public final class RationalConverter extends AbstractUnitConverter
 {
     private static long gcd (long m, long n) {
         if (n == 0L) {
@@ -19,51 +26,150 @@ public final class RationalConverter extends AbstractUnitConverter
             return gcd(n, m % n);
         }
     }
-    
+
+    /** Indicates if <code>a * b</code> overflows a <code>long</code>. */
+    private static boolean multiplyOverflows (long a, long b) {
+        if (((Math.abs(a) | Math.abs(b)) >>> 31) == 0) {
+            return false;
+        }
+        long r = a * b;
+        return ((b != 0) && (r / b != a)) || ((a == Long.MIN_VALUE) && (b == -1));
+    }
+
+    /** The dividend, if it and the divisor fit in a <code>long</code>. */
     private final long _dividend;
 
+    /** The divisor, if it and the dividend fit in a <code>long</code>. */
     private final long _divisor;
 
+    /** The dividend, if it or the divisor does not fit in a <code>long</code>, otherwise <code>null</code>. */
+    private final BigInteger _bigDividend;
+
+    /** The divisor, if it or the dividend does not fit in a <code>long</code>, otherwise <code>null</code>. */
+    private final BigInteger _bigDivisor;
+
+    /** The dividend used to convert <code>double</code> values. */
+    private final double _doubleDividend;
+
+    /** The divisor used to convert <code>double</code> values. */
+    private final double _doubleDivisor;
+
+    /** The factor for single precision conversions, <code>NaN</code> if out of range. */
+    private final float _floatFactor;
+
     public RationalConverter (long dividend, long divisor) {
-        if (divisor < 0) {
-            throw new IllegalArgumentException("Negative divisor");
+        if (divisor <= 0) {
+            throw new IllegalArgumentException((divisor == 0) ? "Zero divisor" : "Negative divisor");
         }
-        if (dividend == divisor) { 
+        long gcd = Math.abs(gcd(dividend, divisor));
+        dividend /= gcd;
+        divisor /= gcd;
+        if (dividend == divisor) {
             throw new IllegalArgumentException("Identity converter not allowed");
         }
         _dividend = dividend;
         _divisor = divisor;
+        _bigDividend = null;
+        _bigDivisor = null;
+        _doubleDividend = dividend;
+        _doubleDivisor = divisor;
+        _floatFactor = floatFactor((double)dividend / divisor);
     }
 
+    public RationalConverter (BigInteger dividend, BigInteger divisor) {
+        if (divisor.signum() <= 0) {
+            throw new IllegalArgumentException((divisor.signum() == 0) ? "Zero divisor" : "Negative divisor");
+        }
+        BigInteger gcd = dividend.gcd(divisor);
+        dividend = dividend.divide(gcd);
+        divisor = divisor.divide(gcd);
+        if (dividend.equals(divisor)) {
+            throw new IllegalArgumentException("Identity converter not allowed");
+        }
+        if ((dividend.bitLength() < 64) && (divisor.bitLength() < 64)) {
+            _dividend = dividend.longValue();
+            _divisor = divisor.longValue();
+            _bigDividend = null;
+            _bigDivisor = null;
+            _doubleDividend = _dividend;
+            _doubleDivisor = _divisor;
+        } else {
+            _dividend = 0;
+            _divisor = 0;
+            _bigDividend = dividend;
+            _bigDivisor = divisor;
+            // The terms may be out of the range of a double even if the factor is not.
+            _doubleDividend = new BigDecimal(dividend).divide(new BigDecimal(divisor),
+                                                              MathContext.DECIMAL128).doubleValue();
+            _doubleDivisor = 1.0;
+        }
+        _floatFactor = floatFactor(_doubleDividend / _doubleDivisor);
+    }
+
+    /**
+     * Returns the dividend.
+     * @throws ArithmeticException if the dividend or divisor does not fit
+     *   in a <code>long</code>; use {@link #getExactDividend} instead.
+     */
     public long getDividend() {
+        if (_bigDividend != null) {
+            throw new ArithmeticException("Dividend does not fit in a long");
+        }
         return _dividend;
     }
 
+    /**
+     * Returns the divisor.
+     * @throws ArithmeticException if the dividend or divisor does not fit
+     *   in a <code>long</code>; use {@link #getExactDivisor} instead.
+     */
     public long getDivisor() {
+        if (_bigDivisor != null) {
+            throw new ArithmeticException("Divisor does not fit in a long");
+        }
         return _divisor;
     }
-    
+
+    /** Returns the dividend, which may not fit in a <code>long</code>. */
+    public BigInteger getExactDividend() {
+        return (_bigDividend != null) ? _bigDividend : BigInteger.valueOf(_dividend);
+    }
+
+    /** Returns the divisor, which may not fit in a <code>long</code>. */
+    public BigInteger getExactDivisor() {
+        return (_bigDivisor != null) ? _bigDivisor : BigInteger.valueOf(_divisor);
+    }
+
+    /** Returns the factor, approximated as a <code>double</code>. */
+    double getFactor() {
+        return _doubleDividend / _doubleDivisor;
+    }
+
     @Override
     public UnitConverter concatenate (UnitConverter converter) {
         if (converter instanceof RationalConverter) {
             RationalConverter that = (RationalConverter)converter;
-            long dividend = this._dividend * that._dividend;
-            long divisor = this._divisor * that._divisor;
-            double dividendF = ((double)this._dividend) * that._dividend;
-            double divisorF = ((double)this._divisor) * that._divisor;
-            if ((dividend != dividendF) || (divisor != divisorF)) {
-                // Long overflows.
-                double factor = dividendF / divisorF;
-                if (((float)factor) == 1.0f) {
-                    return IDENTITY;
-                } else {
-                    return new MultiplyConverter(factor);
+            if ((this._bigDividend == null) && (that._bigDividend == null)) {
+                // Cancel common factors first, so the products are in lowest terms.
+                long gcd1 = Math.abs(gcd(this._dividend, that._divisor));
+                long gcd2 = Math.abs(gcd(that._dividend, this._divisor));
+                long a = this._dividend / gcd1;
+                long b = that._dividend / gcd2;
+                long c = this._divisor / gcd2;
+                long d = that._divisor / gcd1;
+                if (!multiplyOverflows(a, b) && !multiplyOverflows(c, d)) {
+                    long dividend = a * b;
+                    long divisor = c * d;
+                    if (dividend == divisor) {
+                        return IDENTITY;
+                    } else {
+                        return new RationalConverter(dividend, divisor);
+                    }
                 }
             }
-            long gcd = gcd(dividend, divisor);
-            dividend /= gcd;
-            divisor /= gcd;
-            if (dividend == divisor) {
+            BigInteger dividend = this.getExactDividend().multiply(that.getExactDividend());
+            BigInteger divisor = this.getExactDivisor().multiply(that.getExactDivisor());
+            if (dividend.equals(divisor)) {
                 return IDENTITY;
             } else {
                 return new RationalConverter(dividend, divisor);
@@ -74,16 +180,74 @@ public final class RationalConverter extends AbstractUnitConverter
             return super.concatenate(converter);
         }
     }
-    
+
     public double convert (double value) {
-        return value * _dividend  / _divisor;
+        return value * _doubleDividend  / _doubleDivisor;
     }
-    
+
+    @Override
+    protected void convertRange (double[] src, int srcOffset, double[] dst, int dstOffset, int length) {
+        double dividend = _doubleDividend;
+        double divisor = _doubleDivisor;
+        VectorKernel kernel = VectorKernel.INSTANCE;
+        if ((kernel != null) && (length >= VectorKernel.MIN_LENGTH)) {
+            kernel.multiplyDivide(src, srcOffset, dst, dstOffset, length, dividend, divisor);
+            return;
+        }
+        for (int i = 0; i < length; i += 1) {
+            dst[dstOffset + i] = src[srcOffset + i] * dividend / divisor;
+        }
+    }
+
+    @Override
+    public float convertFloat (float value) {
+        if (Float.isNaN(_floatFactor)) {
+            return super.convertFloat(value);
+        }
+        return value * _floatFactor;
+    }
+
+    @Override
+    protected void convertRange (float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        float factor = _floatFactor;
+        if (Float.isNaN(factor)) {
+            super.convertRange(src, srcOffset, dst, dstOffset, length);
+            return;
+        }
+        for (int i = 0; i < length; i += 1) {
+            dst[dstOffset + i] = src[srcOffset + i] * factor;
+        }
+    }
+
     public UnitConverter inverse () {
-        if (_dividend < 0) {
+        if (_bigDividend != null) {
+            if (_bigDividend.signum() < 0) {
+                return new RationalConverter(_bigDivisor.negate(), _bigDividend.negate());
+            } else {
+                return new RationalConverter(_bigDivisor, _bigDividend);
+            }
+        } else if (_dividend == Long.MIN_VALUE) {
+            return new RationalConverter(BigInteger.valueOf(_divisor).negate(),
+                                         BigInteger.valueOf(_dividend).negate());
+        } else if (_dividend < 0) {
             return new RationalConverter(-_divisor, -_dividend);
         } else {
             return new RationalConverter(_divisor, _dividend);
         }
-    }    
+    }
+
+    @Override
+    public boolean equals (Object that) {
+        if (that instanceof RationalConverter) {
+            // Both are in lowest terms, so equal factors have equal terms.
+            RationalConverter r = (RationalConverter)that;
+            if ((_bigDividend == null) && (r._bigDividend == null)) {
+                return (_dividend == r._dividend) && (_divisor == r._divisor);
+            } else {
+                return getExactDividend().equals(r.getExactDividend()) &&
+                       getExactDivisor().equals(r.getExactDivisor());
+            }
+        }
+        return super.equals(that);
+    }
 }
@@ -0,0 +1,59 @@
+package org.ngs.ngunits.converter;
+
+
+/**
+ * Bulk conversion loops for the linear converters, implemented with SIMD
+ * instructions. The implementation uses the <code>jdk.incubator.vector</code>
+ * module, so it is compiled separately (see the <code>compile-jdk17</code>
+ * target) and loaded by reflection; if it is not on the class path, the
+ * module is not available at run time, or the platform has no SIMD support
+ * for doubles, {@link #INSTANCE} is <code>null</code> and the converters use
+ * their scalar loops.
+ * <p>
+ * Implementations must produce exactly the same results as the scalar
+ * loops: one rounding per operation, in the same order, and no fused
+ * multiply-add.
+ * <p>
+ * The kernels can be disabled by setting the
+ * <code>org.ngs.ngunits.vector</code> system property to
+ * <code>false</code>.
+ */
+abstract class VectorKernel
+{
+    /** Ranges shorter than this are converted by the scalar loops. */
+    static final int MIN_LENGTH = 64;
+
+    /** The SIMD kernels, or <code>null</code> if they are not available. */
+    static final VectorKernel INSTANCE = load();
+
+    /** */
+    private static VectorKernel load () {
+        try {
+            if ("false".equalsIgnoreCase(System.getProperty("org.ngs.ngunits.vector"))) {
+                return null;
+            }
+            Class<?> c = Class.forName("org.ngs.ngunits.converter.VectorKernelImpl");
+            // null if there is no SIMD support for doubles.
+            return (VectorKernel)c.getDeclaredMethod("create").invoke(null);
+        } catch (Throwable e) {
+            // Not compiled in, or the incubator module is missing.
+            return null;
+        }
+    }
+
+    /** <code>dst[i] = src[i] * factor</code> */
+    abstract void multiply (double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+                            double factor);
+
+    /** <code>dst[i] = src[i] * dividend / divisor</code> */
+    abstract void multiplyDivide (double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+                                  double dividend, double divisor);
+
+    /** <code>dst[i] = src[i] + offset</code> */
+    abstract void add (double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+                       double offset);
+
+    /** <code>dst[i] = src[i] * factor + offset</code> */
+    abstract void multiplyAdd (double[] src, int srcOffset, double[] dst, int dstOffset, int length,
+                               double factor, double offset);
+}
@@ -0,0 +1,78 @@
+package org.ngs.ngunits.format;
+
+import org.ngs.ngunits.BoundedCache;
+import org.ngs.ngunits.Unit;
+
+/**
+ * The text of units formatted with a given symbol map. The text is only
+ * valid while the symbol map is unchanged; see {@link #isCurrent}.
+ * <p>
+ * Units are looked up by identity, since units that are equal may still be
+ * formatted differently: an annotated unit is equal to its parent. Equal
+ * units that are different instances have their own entries.
+ */
+final class FormatCache
+{
+    /** A unit compared by identity. */
+    private static final class Key {
+        final Unit<?> unit;
+
+        Key (Unit<?> unit) {
+            this.unit = unit;
+        }
+
+        @Override
+        public boolean equals (Object that) {
+            return (that instanceof Key) && (((Key)that).unit == unit);
+        }
+
+        @Override
+        public int hashCode () {
+            return System.identityHashCode(unit);
+        }
+    }
+
+    /** */
+    private final SymbolMap _symbols;
+
+    /** The version of the symbol map when this cache was created. */
+    private final int _version;
+
+    /** */
+    private final BoundedCache<Key,String> _results;
+
+    /** */
+    FormatCache (SymbolMap symbols, int size, BoundedCache.Policy policy) {
+        _symbols = symbols;
+        _version = symbols.getVersion();
+        _results = new BoundedCache<Key,String>(size, policy);
+    }
+
+    /** */
+    BoundedCache<?,?> getResults () {
+        return _results;
+    }
+
+    /** Indicates if the text is still valid for the given symbol map. */
+    boolean isCurrent (SymbolMap symbols) {
+        return (symbols == _symbols) && (symbols.getVersion() == _version);
+    }
+
+    /** Returns an empty cache of the same size and policy for the given symbol map. */
+    FormatCache renew (SymbolMap symbols) {
+        return new FormatCache(symbols, _results.getCapacity(), _results.getPolicy());
+    }
+
+    /**
+     * Returns the text cached for <code>unit</code>, or <code>null</code> if
+     * there is none.
+     */
+    String get (Unit<?> unit) {
+        return _results.get(new Key(unit));
+    }
+
+    /** Caches the text of <code>unit</code>. */
+    void put (Unit<?> unit, String text) {
+        _results.put(new Key(unit), text);
+    }
+}
@@ -0,0 +1,73 @@
+package org.ngs.ngunits.format;
+
+import java.text.ParsePosition;
+import org.ngs.ngunits.BoundedCache;
+import org.ngs.ngunits.Unit;
+
+/**
+ * The results of parsing strings with a given symbol map: the unit parsed
+ * from each string, or the error index if parsing failed. The results are
+ * only valid while the symbol map is unchanged; see {@link #isCurrent}.
+ */
+final class ParseCache
+{
+    /** */
+    private final SymbolMap _symbols;
+
+    /** The version of the symbol map when this cache was created. */
+    private final int _version;
+
+    /** A <code>Unit</code> or an <code>Integer</code> error index by source string. */
+    private final BoundedCache<String,Object> _results;
+
+    /** */
+    ParseCache (SymbolMap symbols, int size, BoundedCache.Policy policy) {
+        _symbols = symbols;
+        _version = symbols.getVersion();
+        _results = new BoundedCache<String,Object>(size, policy);
+    }
+
+    /** */
+    BoundedCache<String,?> getResults () {
+        return _results;
+    }
+
+    /** Indicates if the results are still valid for the given symbol map. */
+    boolean isCurrent (SymbolMap symbols) {
+        return (symbols == _symbols) && (symbols.getVersion() == _version);
+    }
+
+    /** Returns an empty cache of the same size and policy for the given symbol map. */
+    ParseCache renew (SymbolMap symbols) {
+        return new ParseCache(symbols, _results.getCapacity(), _results.getPolicy());
+    }
+
+    /**
+     * Returns the cached result of parsing <code>source</code>: a
+     * <code>Unit</code>, an <code>Integer</code> error index, or
+     * <code>null</code> if there is none.
+     */
+    Object get (String source) {
+        return _results.get(source);
+    }
+
+    /**
+     * Returns a result returned by {@link #get} as
+     * {@link java.text.Format#parseObject(String, ParsePosition)} would,
+     * updating <code>pos</code>.
+     */
+    static Unit apply (Object cached, String source, ParsePosition pos) {
+        if (cached instanceof Unit) {
+            pos.setIndex(source.length());
+            return (Unit)cached;
+        } else {
+            pos.setErrorIndex(((Integer)cached).intValue());
+            return null;
+        }
+    }
+
+    /** Caches the result of parsing <code>source</code>. */
+    void put (String source, Unit result, ParsePosition pos) {
+        _results.put(source, (result != null) ? (Object)result : Integer.valueOf(pos.getErrorIndex()));
+    }
+}
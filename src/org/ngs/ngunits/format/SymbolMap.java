@@ -20,7 +20,8 @@ import org.ngs.ngunits.Prefix;
  * (one way). No attempt is made to verify the uniqueness of the
  * mappings.
  * <p>
- * Mappings are read from a <code>ResourceBundle</code>, the keys
+ * Mappings are read from a <code>ResourceBundle</code> (or from a 
+ * {@link SymbolTable} generated from one), the keys
  * of which should consist of a fully-qualified class name, followed
  * by a dot ('.'), and then the name of a static field belonging
  * to that class. The values in the resource bundle should consist
@@ -64,14 +65,82 @@ public class SymbolMap {
     /** */
     private Map<UnitConverter, Prefix> _converterToPrefix;
     
+    /** Incremented whenever a symbol is added, so cached lookups can be invalidated. */
+    private volatile int _version;
+    
+    /** The tries used by {@link #lookup}, compiled on demand. */
+    private volatile Tries _tries;
+    
+    /** The symbols of units and prefixes, compiled for lookup. */
+    private static final class Tries {
+        
+        /** The version of the map the tries were compiled from. */
+        final int version;
+        
+        /** 
+         * Unit symbols. The value of each is an array holding the entry 
+         * for the unit alone, followed by the entry for the unit with each
+         * prefix, which are created as they are needed.
+         */
+        final SymbolTrie units;
+        
+        /** Prefix symbols. The value of each is its index in <code>prefixes</code>, as an <code>Integer</code>. */
+        final SymbolTrie prefixSymbols;
+        
+        /** */
+        final Prefix[] prefixes;
+        
+        Tries (int version, Map<String, Unit<?>> symbolToUnit, Map<String, Prefix> symbolToPrefix) {
+            this.version = version;
+            prefixes = new Prefix[symbolToPrefix.size()];
+            Map<String,Integer> indexes = new HashMap<String,Integer>();
+            for (Map.Entry<String,Prefix> entry : symbolToPrefix.entrySet()) {
+                prefixes[indexes.size()] = entry.getValue();
+                indexes.put(entry.getKey(), Integer.valueOf(indexes.size()));
+            }
+            prefixSymbols = new SymbolTrie(indexes);
+            Map<String,Entry[]> entries = new HashMap<String,Entry[]>();
+            for (Map.Entry<String, Unit<?>> entry : symbolToUnit.entrySet()) {
+                Entry[] unitEntries = new Entry[prefixes.length + 1];
+                unitEntries[0] = new Entry(null, entry.getValue());
+                entries.put(entry.getKey(), unitEntries);
+            }
+            units = new SymbolTrie(entries);
+        }
+    }
+    
     /** */
     public SymbolMap (ResourceBundle rb) {
+        this(rb, null);
+    }
+    
+    /**
+     * Creates a map of the symbols in the bundle with the given base name,
+     * found as by {@link ResourceBundle#getBundle(String, Locale)}. If a 
+     * table was generated from the bundle when building (see 
+     * {@link SymbolTable}), its fields are not looked up by reflection.
+     */
+    public SymbolMap (String baseName, Locale locale) {
+        this(ResourceBundle.getBundle(baseName, locale), baseName);
+    }
+    
+    /** 
+     * Creates a map of the symbols in the given bundle, or in the table 
+     * generated from it if it was loaded with the given base name.
+     * @param baseName the base name of the bundle, or <code>null</code>
+     */
+    protected SymbolMap (ResourceBundle rb, String baseName) {
         _locale = rb.getLocale();
         _symbolToUnit = new HashMap<String, Unit<?>>();
         _unitToSymbol = new HashMap<Unit<?>, String>();
         _symbolToPrefix = new HashMap<String, Prefix>();
         _prefixToSymbol = new HashMap<Prefix, String>();
         _converterToPrefix = new HashMap<UnitConverter, Prefix>();
+        SymbolTable table = (baseName != null) ? SymbolTable.forBundle(baseName, _locale) : null;
+        if (table != null) {
+            table.load(this);
+            return;
+        }
         for (Enumeration<String> keys = rb.getKeys(); keys.hasMoreElements();) {
             String fqn = keys.nextElement();
             String[] symbols = rb.getString(fqn).split(",");
@@ -111,11 +180,13 @@ public class SymbolMap {
         if (!_unitToSymbol.containsKey(unit)) {
             _unitToSymbol.put(unit, symbol);
         }
+        modified();
     }
     
     /** */
     public void alias (Unit<?> unit, String symbol) { 
         _symbolToUnit.put(symbol, unit);
+        modified();
     }
     
     /** */
@@ -123,23 +194,99 @@ public class SymbolMap {
         _symbolToPrefix.put(symbol, prefix);
         _prefixToSymbol.put(prefix, symbol);
         _converterToPrefix.put(prefix.converter, prefix);
+        modified();
     }
     
-    /** */
+    /**
+     * Returns a number that changes whenever this map is modified. Formats
+     * compare it to the version their cached parse results were made with.
+     */
+    public int getVersion () {
+        return _version;
+    }
+    
+    /**
+     * Records that this map has been modified. Subclasses that change the
+     * result of {@link #lookup} other than through the methods of this class
+     * must call this.
+     */
+    protected void modified () {
+        _version += 1;
+    }
+    
+    /** 
+     * Returns the unit with the given symbol, or failing that, the prefix 
+     * and unit whose symbols together make up the given symbol, choosing 
+     * the longest such prefix. Returns <code>null</code> if there is no 
+     * such unit. 
+     */
     public Entry lookup (String symbol) {
-        Unit u = _symbolToUnit.get(symbol);
-        if (u != null) {
-            return new Entry(null, u);
+        return find(symbol, 0, symbol.length(), null);
+    }
+    
+    /**
+     * Looks up the symbol in the given region of a character sequence, as
+     * {@link #lookup(String)} does, without copying it. Subclasses that 
+     * override one of the lookup methods should override both.
+     */
+    public Entry lookup (CharSequence symbol, int start, int end) {
+        return find(symbol, start, end, null);
+    }
+    
+    /**
+     * Looks up the symbol in the given region of a character sequence after
+     * mapping each character through <code>fold</code>, as if the mapped 
+     * characters had been passed to {@link #lookup(String)}.
+     */
+    Entry lookup (CharSequence symbol, int start, int end, char[] fold) {
+        return find(symbol, start, end, fold);
+    }
+    
+    /** */
+    private Entry find (CharSequence symbol, int start, int end, char[] fold) {
+        Tries tries = _tries;
+        if ((tries == null) || (tries.version != _version)) {
+            tries = new Tries(_version, _symbolToUnit, _symbolToPrefix);
+            _tries = tries;
         }
-        for (Map.Entry<String,Prefix> entry : _symbolToPrefix.entrySet()) {
-            if (symbol.startsWith(entry.getKey())) {
-                u = _symbolToUnit.get(symbol.substring(entry.getKey().length()));
-                if (u != null) {
-                    return new Entry(entry.getValue(), u);
+        Entry[] entries = (Entry[])tries.units.get(symbol, start, end, fold);
+        if (entries != null) {
+            return entries[0];
+        }
+        return findPrefixed(tries, symbol, start, end, fold, 0, start);
+    }
+    
+    /**
+     * Returns the entry for a prefix that extends the one ending at 
+     * <code>node</code> of the prefix trie, at index <code>i</code> of the
+     * symbol, followed by a unit. Longer prefixes are tried first.
+     */
+    private Entry findPrefixed (Tries tries, CharSequence symbol, int start, int end, char[] fold, int node, int i) {
+        if (i < end) {
+            int child = tries.prefixSymbols.child(node, SymbolTrie.fold(symbol.charAt(i), fold));
+            if (child >= 0) {
+                Entry result = findPrefixed(tries, symbol, start, end, fold, child, i + 1);
+                if (result != null) {
+                    return result;
                 }
             }
         }
-        return null;
+        Integer prefix = (Integer)tries.prefixSymbols.value(node);
+        if (prefix == null) {
+            return null;
+        }
+        Entry[] entries = (Entry[])tries.units.get(symbol, i, end, fold);
+        if (entries == null) {
+            return null;
+        }
+        int index = prefix.intValue() + 1;
+        Entry result = entries[index];
+        if (result == null) {
+            // Racy but idempotent.
+            result = new Entry(tries.prefixes[index - 1], entries[0].unit);
+            entries[index] = result;
+        }
+        return result;
     }
     
     /** */
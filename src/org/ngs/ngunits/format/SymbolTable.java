@@ -0,0 +1,59 @@
+package org.ngs.ngunits.format;
+
+import java.util.Locale;
+import org.ngs.ngunits.Prefix;
+import org.ngs.ngunits.Unit;
+
+/**
+ * The contents of a resource bundle of symbols or metadata, compiled into
+ * Java at build time by <code>org.ngs.ngunits.build.SymbolTableGenerator</code>
+ * (the <code>tables</code> target of the Ant build). A table refers to the
+ * fields named by the bundle's keys directly, so loading it does not need
+ * reflection. Tables are named after the bundle they were generated from:
+ * <code>UnitFormatTable_en_GB</code> for <code>UnitFormat_en_GB.properties</code>.
+ * When there is no table for a bundle, the bundle itself is read.
+ */
+abstract class SymbolTable
+{
+    /** Adds the symbols in this table to the given map. */
+    void load (SymbolMap map) { }
+
+    /** Adds the properties in this table to the given metadata. */
+    void load (UnitMetadata metadata) { }
+
+    /**
+     * Returns the table generated from the bundle with the given base name
+     * and locale, or <code>null</code> if there is none.
+     */
+    static SymbolTable forBundle (String baseName, Locale locale) {
+        String suffix = locale.toString();
+        String className = baseName + "Table" + ((suffix.length() > 0) ? "_" + suffix : "");
+        try {
+            Class<?> c = Class.forName(className, false, SymbolTable.class.getClassLoader());
+            if (SymbolTable.class.isAssignableFrom(c)) {
+                return (SymbolTable)c.newInstance();
+            }
+        } catch (Exception e) {
+            // Not generated; fall back to the bundle.
+        }
+        return null;
+    }
+
+    /** Labels the unit with the first symbol and aliases it with the rest. */
+    static void put (SymbolMap map, Unit<?> unit, String... symbols) {
+        map.label(unit, symbols[0]);
+        for (int i = 1; i < symbols.length; i += 1) {
+            map.alias(unit, symbols[i]);
+        }
+    }
+
+    /** Labels the prefix with the first symbol. As in a bundle, the rest are ignored. */
+    static void put (SymbolMap map, Prefix prefix, String... symbols) {
+        map.label(prefix, symbols[0]);
+    }
+
+    /** */
+    static void put (UnitMetadata metadata, Unit<?> unit, String property, String value) {
+        metadata.store(unit, property, value);
+    }
+}
@@ -0,0 +1,118 @@
+package org.ngs.ngunits.format;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable trie of symbols, compiled into flat arrays. The edges leaving
+ * each node are stored contiguously, sorted by character, so following an
+ * edge is a binary search and no objects are allocated while matching.
+ * Nodes are numbered from 0, the root.
+ */
+final class SymbolTrie
+{
+    /** The index in <code>_chars</code> of the first edge leaving each node, and the total number of edges. */
+    private final int[] _edges;
+
+    /** The character of each edge. */
+    private final char[] _chars;
+
+    /** The node each edge leads to. */
+    private final int[] _targets;
+
+    /** The value of each node, or <code>null</code> if no symbol ends there. */
+    private final Object[] _values;
+
+    /** A node of the trie while it is being built. */
+    private static final class Node {
+        final TreeMap<Character,Node> children = new TreeMap<Character,Node>();
+        Object value;
+        int id;
+    }
+
+    /** Compiles a trie of the keys of <code>symbols</code>, with their values. */
+    SymbolTrie (Map<String,?> symbols) {
+        Node root = new Node();
+        for (Map.Entry<String,?> entry : symbols.entrySet()) {
+            Node node = root;
+            String symbol = entry.getKey();
+            for (int i = 0; i < symbol.length(); i += 1) {
+                Character c = Character.valueOf(symbol.charAt(i));
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.value = entry.getValue();
+        }
+        // Number the nodes breadth first, so the root is 0.
+        List<Node> nodes = new ArrayList<Node>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i += 1) {
+            nodes.get(i).id = i;
+            nodes.addAll(nodes.get(i).children.values());
+        }
+        _edges = new int[nodes.size() + 1];
+        _chars = new char[nodes.size() - 1];
+        _targets = new int[nodes.size() - 1];
+        _values = new Object[nodes.size()];
+        int edge = 0;
+        for (int i = 0; i < nodes.size(); i += 1) {
+            Node node = nodes.get(i);
+            _edges[i] = edge;
+            _values[i] = node.value;
+            for (Map.Entry<Character,Node> child : node.children.entrySet()) {
+                _chars[edge] = child.getKey().charValue();
+                _targets[edge] = child.getValue().id;
+                edge += 1;
+            }
+        }
+        _edges[nodes.size()] = edge;
+    }
+
+    /** Returns the node reached from <code>node</code> by <code>c</code>, or -1. */
+    int child (int node, char c) {
+        int low = _edges[node];
+        int high = _edges[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = _chars[mid];
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return _targets[mid];
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the value of the symbol ending at <code>node</code>, or <code>null</code>. */
+    Object value (int node) {
+        return _values[node];
+    }
+
+    /**
+     * Returns the value of the symbol in the given region of
+     * <code>source</code>, or <code>null</code> if it is not in the trie.
+     * Each character of the region is first mapped through
+     * <code>fold</code>, if it is in its range.
+     */
+    Object get (CharSequence source, int start, int end, char[] fold) {
+        int node = 0;
+        for (int i = start; (i < end) && (node >= 0); i += 1) {
+            node = child(node, fold(source.charAt(i), fold));
+        }
+        return (node >= 0) ? _values[node] : null;
+    }
+
+    /** Maps <code>c</code> through <code>fold</code>, if it is not <code>null</code> and covers <code>c</code>. */
+    static char fold (char c, char[] fold) {
+        return ((fold != null) && (c < fold.length)) ? fold[c] : c;
+    }
+}
@@ -1,16 +1,20 @@
 package org.ngs.ngunits.format;
 
-import java.io.StringReader;
+import java.io.IOException;
+import java.math.BigInteger;
 import java.text.FieldPosition;
 import java.text.Format;
 import java.text.ParsePosition;
+import java.util.Locale;
 import java.util.Map;
-import java.util.ResourceBundle;
+import org.ngs.ngunits.BoundedCache;
 import org.ngs.ngunits.Prefix;
 import org.ngs.ngunits.SI;
 import org.ngs.ngunits.UCUM;
 import org.ngs.ngunits.Unit;
 import org.ngs.ngunits.UnitConverter;
+import org.ngs.ngunits.UnitEvents;
+import org.ngs.ngunits.UnitMetrics;
 import org.ngs.ngunits.converter.AbstractUnitConverter;
 import org.ngs.ngunits.converter.MultiplyConverter;
 import org.ngs.ngunits.converter.RationalConverter;
@@ -31,8 +35,8 @@ import org.ngs.ngunits.unit.TransformedUnit;
  * <a href="http://aurora.regenstrief.org/ucum/ticket/4">error</a>. 
  * I've attempted to work around the problem by modifying the BNF 
  * productions for &lt;Term&gt;. Once the error in the standard is
- * corrected, it may be necessary to modify the productions in the
- * UCUMParser.jj file to conform to the standard.
+ * corrected, it may be necessary to modify the productions in
+ * {@link UCUMFormatParser} to conform to the standard.
  * <p>
  * Currently, unit annotations (which appear between curly braces 
  * '{' and '}') are ignored in input and are not output during 
@@ -62,6 +66,11 @@ public abstract class UCUMFormat extends Format {
         public Object parseObject (String source, ParsePosition pos) {
             throw new UnsupportedOperationException("The print format is for pretty-printing of units only. Parsing is not supported.");
         }
+        
+        @Override
+        public Unit<?> parse (CharSequence source, int start, int end) {
+            throw new UnsupportedOperationException("The print format is for pretty-printing of units only. Parsing is not supported.");
+        }
     }
     
     /**
@@ -80,37 +89,32 @@ public abstract class UCUMFormat extends Format {
         
         @Override
         public Object parseObject (String source, ParsePosition pos) {
-            if (!_caseSensitive) {
-                source = source.toUpperCase();
-            }
             return parseInternal(source, pos);
         }
+        
+        @Override
+        boolean isCaseSensitive () {
+            return _caseSensitive;
+        }
     }
     
-    ////////////////////////////////////////////////////////
-    // Class variables                                    //
-    //                                                    //
-    // The symbol maps are filled in a static initializer //
-    // at the bottom of this file.                         //
-    ////////////////////////////////////////////////////////
-    
-    /** Symbols from the "print" column in the UCUM standard */
-    private static final SymbolMap PRINT_SYMBOLS = new SymbolMap(ResourceBundle.getBundle("org.ngs.ngunits.format.UCUM_Print"));
-    
-    /** Symbols from the "c/s" column in the UCUM standard */
-    private static final SymbolMap CASE_SENSITIVE_SYMBOLS = new SymbolMap(ResourceBundle.getBundle("org.ngs.ngunits.format.UCUM_CS"));
-    
-    /** Symbols from the "c/i" column in the UCUM standard */
-    private static final SymbolMap CASE_INSENSITIVE_SYMBOLS = new SymbolMap(ResourceBundle.getBundle("org.ngs.ngunits.format.UCUM_CI"));
-    
-    /** Instance for formatting using "print" symbols */
-    private static final UCUMFormat PRINT_INSTANCE = new UCUMFormat.Print(PRINT_SYMBOLS);
+    /** 
+     * Holds the instance for formatting using "print" symbols from the 
+     * UCUM standard, so the symbols are not read until it is used.
+     */
+    private static final class PrintInstance {
+        static final UCUMFormat INSTANCE = new UCUMFormat.Print(new SymbolMap("org.ngs.ngunits.format.UCUM_Print", Locale.getDefault()));
+    }
     
-    /** Instance for formatting and parsing using "c/s" symbols */
-    private static final UCUMFormat CS_INSTANCE = new UCUMFormat.Parsing(CASE_SENSITIVE_SYMBOLS, true);
+    /** Holds the instance for formatting and parsing using "c/s" symbols. */
+    private static final class CaseSensitiveInstance {
+        static final UCUMFormat INSTANCE = new UCUMFormat.Parsing(new SymbolMap("org.ngs.ngunits.format.UCUM_CS", Locale.getDefault()), true);
+    }
     
-    /** Instance for formatting and parsing using "c/i" symbols */
-    private static final UCUMFormat CI_INSTANCE = new UCUMFormat.Parsing(CASE_INSENSITIVE_SYMBOLS, false);
+    /** Holds the instance for formatting and parsing using "c/i" symbols. */
+    private static final class CaseInsensitiveInstance {
+        static final UCUMFormat INSTANCE = new UCUMFormat.Parsing(new SymbolMap("org.ngs.ngunits.format.UCUM_CI", Locale.getDefault()), false);
+    }
     
     ///////////////////
     // Class methods //
@@ -118,17 +122,17 @@ public abstract class UCUMFormat extends Format {
     
     /** Returns the instance for formatting using "print" symbols */
     public static UCUMFormat getPrintInstance () {
-        return PRINT_INSTANCE;
+        return PrintInstance.INSTANCE;
     }
     
     /** Returns the instance for formatting and parsing using "c/s" symbols */
     public static UCUMFormat getCaseSensitiveInstance () {
-        return CS_INSTANCE;
+        return CaseSensitiveInstance.INSTANCE;
     }
     
     /** Returns the instance for formatting and parsing using "c/i" symbols */
     public static UCUMFormat getCaseInsensitiveInstance () {
-        return CI_INSTANCE;
+        return CaseInsensitiveInstance.INSTANCE;
     }
     
     ////////////////////////
@@ -138,6 +142,12 @@ public abstract class UCUMFormat extends Format {
     /** The symbol map used by this instance to map between {@link org.ngs.ngunits.Unit Unit}s and <code>String</code>s. */
     final SymbolMap _symbolMap;
     
+    /** Results of parsing by source string, or <code>null</code> if they are not cached. */
+    private volatile ParseCache _parseCache;
+    
+    /** Text of formatted units by unit, or <code>null</code> if it is not cached. */
+    private volatile FormatCache _formatCache;
+    
     //////////////////
     // Constructors //
     //////////////////
@@ -147,6 +157,82 @@ public abstract class UCUMFormat extends Format {
      */
     UCUMFormat (SymbolMap symbolMap) { 
         _symbolMap = symbolMap;
+        _parseCache = new ParseCache(symbolMap, UnitFormat.DEFAULT_PARSE_CACHE_SIZE, BoundedCache.Policy.SECOND_CHANCE);
+        _formatCache = new FormatCache(symbolMap, UnitFormat.DEFAULT_FORMAT_CACHE_SIZE, BoundedCache.Policy.SECOND_CHANCE);
+    }
+    
+    /**
+     * Returns the cache of parse results, for inspecting its hit and miss 
+     * counts, or <code>null</code> if parse results are not cached.
+     */
+    public BoundedCache<String,?> getParseCache () {
+        ParseCache cache = parseCache();
+        return (cache == null) ? null : cache.getResults();
+    }
+    
+    /**
+     * Replaces the cache of parse results with an empty one of the given 
+     * size and eviction policy. A size of zero disables caching. Cached 
+     * results are discarded whenever the symbol map is modified.
+     * @param size the maximum number of source strings to cache.
+     * @param policy the eviction policy.
+     */
+    public void setParseCache (int size, BoundedCache.Policy policy) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative cache size");
+        } else if (size == 0) {
+            _parseCache = null;
+        } else {
+            _parseCache = new ParseCache(_symbolMap, size, policy);
+        }
+    }
+    
+    /** Returns the cache of parse results, emptied if the symbol map has changed. */
+    private ParseCache parseCache () {
+        ParseCache cache = _parseCache;
+        if ((cache != null) && !cache.isCurrent(_symbolMap)) {
+            cache = cache.renew(_symbolMap);
+            _parseCache = cache;
+        }
+        return cache;
+    }
+    
+    /**
+     * Returns the cache of formatted units, for inspecting its hit and miss 
+     * counts, or <code>null</code> if formatted units are not cached.
+     */
+    public BoundedCache<?,?> getFormatCache () {
+        FormatCache cache = formatCache();
+        return (cache == null) ? null : cache.getResults();
+    }
+    
+    /**
+     * Replaces the cache of formatted units with an empty one of the given 
+     * size and eviction policy. A size of zero disables caching. Cached 
+     * text is discarded whenever the symbol map is modified. Cached text
+     * is only used for the instance it was formatted from, so interning of
+     * units (see {@link DefaultUnitDelegate#setInterning}) improves hits.
+     * @param size the maximum number of units to cache.
+     * @param policy the eviction policy.
+     */
+    public void setFormatCache (int size, BoundedCache.Policy policy) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative cache size");
+        } else if (size == 0) {
+            _formatCache = null;
+        } else {
+            _formatCache = new FormatCache(_symbolMap, size, policy);
+        }
+    }
+    
+    /** Returns the cache of formatted units, emptied if the symbol map has changed. */
+    private FormatCache formatCache () {
+        FormatCache cache = _formatCache;
+        if ((cache != null) && !cache.isCurrent(_symbolMap)) {
+            cache = cache.renew(_symbolMap);
+            _formatCache = cache;
+        }
+        return cache;
     }
     
     ////////////////
@@ -155,11 +241,68 @@ public abstract class UCUMFormat extends Format {
     
     @Override
     public StringBuffer format (Object obj, StringBuffer buffer, FieldPosition pos) {
-        formatInternal((Unit<?>)obj, buffer);
-        return buffer;
+        return buffer.append(text((Unit<?>)obj));
     }
     
-    private void formatInternal (Unit<?> unit, StringBuffer buffer) {
+    /**
+     * Formats the given unit to the given <code>StringBuilder</code>.
+     * @param unit the unit to be formatted
+     * @param builder the <code>StringBuilder</code> to append to
+     * @return <code>builder</code>
+     */
+    public StringBuilder format (Unit<?> unit, StringBuilder builder) {
+        if (formatCache() == null) {
+            UnitEvents events = UnitEvents.INSTANCE;
+            Object event = (events == null) ? null : events.beginFormat();
+            int start = builder.length();
+            formatInternal(unit, builder);
+            if (event != null) {
+                events.endFormat(event, this, unit, builder.substring(start), UnitEvents.CacheOutcome.UNCACHED);
+            }
+            return builder;
+        }
+        return builder.append(text(unit));
+    }
+    
+    /**
+     * Formats the given unit to the given <code>Appendable</code>.
+     * @param unit the unit to be formatted
+     * @param out the <code>Appendable</code> to append to
+     * @return <code>out</code>
+     * @throws IOException if <code>out</code> does
+     */
+    public Appendable format (Unit<?> unit, Appendable out) throws IOException {
+        return out.append(text(unit));
+    }
+    
+    /** Returns the text of the given unit, from the cache if possible. */
+    private String text (Unit<?> unit) {
+        UnitEvents events = UnitEvents.INSTANCE;
+        Object event = (events == null) ? null : events.beginFormat();
+        FormatCache cache = formatCache();
+        String result = (cache == null) ? null : cache.get(unit);
+        UnitEvents.CacheOutcome outcome = UnitEvents.CacheOutcome.HIT;
+        if (result != null) {
+            UnitMetrics.getInstance().cacheHit(UnitMetrics.Cache.FORMAT);
+        } else {
+            StringBuilder builder = new StringBuilder();
+            formatInternal(unit, builder);
+            result = builder.toString();
+            if (cache != null) {
+                cache.put(unit, result);
+                outcome = UnitEvents.CacheOutcome.MISS;
+                UnitMetrics.getInstance().cacheMiss(UnitMetrics.Cache.FORMAT);
+            } else {
+                outcome = UnitEvents.CacheOutcome.UNCACHED;
+            }
+        }
+        if (event != null) {
+            events.endFormat(event, this, unit, result, outcome);
+        }
+        return result;
+    }
+    
+    private void formatInternal (Unit<?> unit, StringBuilder buffer) {
         String symbol = _symbolMap.getSymbol(unit);
         if (symbol != null) {
             buffer.append(symbol);
@@ -186,14 +329,14 @@ public abstract class UCUMFormat extends Format {
                 }
             }
         } else if ((unit instanceof TransformedUnit) || unit.equals(SI.KILOGRAM)) {
-            StringBuffer temp = new StringBuffer();
+            int start = buffer.length();
             UnitConverter converter;
             boolean printSeparator;
             if (unit.equals(SI.KILOGRAM)) {
                 // A special case because KILOGRAM is a BaseUnit instead of 
                 // a transformed unit, for compatability with existing SI 
                 // unit system.
-                temp = format(UCUM.GRAM, temp, null);
+                formatInternal(UCUM.GRAM, buffer);
                 converter = Prefix.KILO.converter;
                 printSeparator = true;
             } else {
@@ -205,11 +348,10 @@ public abstract class UCUMFormat extends Format {
                     parentUnit = UCUM.GRAM;
                     converter = converter.concatenate(Prefix.KILO.converter);
                 }
-                temp = format(parentUnit, temp, null);
+                formatInternal(parentUnit, buffer);
                 printSeparator = !parentUnit.equals(DefaultUnitDelegate.INSTANCE.one());
             }
-            formatConverter(converter, printSeparator, temp);
-            buffer.append(temp);
+            formatConverter(converter, printSeparator, buffer, start);
         } else {
             throw new IllegalArgumentException("Cannot format the given Object as UCUM units (unsupported unit type "+unit.getClass().getName()+")");
         }
@@ -220,28 +362,42 @@ public abstract class UCUMFormat extends Format {
         }
     }
     
-    protected void formatExponent (Unit<?> unit, int pow, boolean continued, StringBuffer buffer) {
+    protected void formatExponent (Unit<?> unit, int pow, boolean continued, StringBuilder buffer) {
         if (pow < 0) {
             buffer.append('/');
         } else if (continued) {
             buffer.append('.');
         }
-        StringBuffer temp = new StringBuffer();
-        formatInternal(unit, temp);
-        if ((temp.indexOf(".") >= 0) || (temp.indexOf("/") >= 0)) {
-            temp.insert(0, '(');
-            temp.append(')');
+        int start = buffer.length();
+        formatInternal(unit, buffer);
+        if (isExpression(buffer, start)) {
+            buffer.insert(start, '(');
+            buffer.append(')');
         }
-        buffer.append(temp);
         if (Math.abs(pow) == 1) {
             // do nothing
         } else {
-            buffer.append(Integer.toString(Math.abs(pow)));
+            buffer.append(Math.abs(pow));
         }
     }
     
+    /** 
+     * Indicates if the text from <code>start</code> to the end of the
+     * buffer contains an operator, and so must be enclosed in parentheses
+     * before it is operated on.
+     */
+    private static boolean isExpression (StringBuilder buffer, int start) {
+        for (int i = start; i < buffer.length(); i += 1) {
+            char c = buffer.charAt(i);
+            if ((c == '.') || (c == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
-     * Formats the given converter to the given StringBuffer. This is similar
+     * Formats the given converter to the given StringBuilder. This is similar
      * to what {@link ConverterFormat} does, but there's no need to worry about
      * operator precedence here, since UCUM only supports multiplication, 
      * division, and exponentiation and expressions are always evaluated left-
@@ -250,19 +406,21 @@ public abstract class UCUMFormat extends Format {
      * @param continued <code>true</code> if the converter expression should 
      *    begin with an operator, otherwise <code>false</code>. This will always 
      *    be true unless the unit being modified is equal to Unit.ONE.
-     * @param buffer the <code>StringBuffer</code> to append to. Contains the
-     *    already-formatted unit being modified by the given converter.
+     * @param buffer the <code>StringBuilder</code> to append to. Contains the
+     *    already-formatted unit being modified by the given converter from
+     *    index <code>start</code>.
+     * @param start the index of the formatted unit in <code>buffer</code>.
      */
-    protected void formatConverter (UnitConverter converter, boolean continued, StringBuffer buffer) {
-        boolean unitIsExpression = ((buffer.indexOf(".") >= 0) || (buffer.indexOf("/") >= 0));
+    protected void formatConverter (UnitConverter converter, boolean continued, StringBuilder buffer, int start) {
+        boolean unitIsExpression = isExpression(buffer, start);
         Prefix prefix = _symbolMap.getPrefix(converter);
         if ((prefix != null) && (!unitIsExpression)) {
-            buffer.insert(0, _symbolMap.getSymbol(prefix));
+            buffer.insert(start, _symbolMap.getSymbol(prefix));
         } else if (converter == AbstractUnitConverter.IDENTITY) {
             // do nothing
         } else if (converter instanceof MultiplyConverter) {
             if (unitIsExpression) {
-                buffer.insert(0, '(');
+                buffer.insert(start, '(');
                 buffer.append(')');
             }
             MultiplyConverter multiplyConverter = (MultiplyConverter)converter;
@@ -277,19 +435,19 @@ public abstract class UCUMFormat extends Format {
             buffer.append(lFactor);
         } else if (converter instanceof RationalConverter) {
             if (unitIsExpression) {
-                buffer.insert(0, '(');
+                buffer.insert(start, '(');
                 buffer.append(')');
             }
             RationalConverter rationalConverter = (RationalConverter)converter;
-            if (rationalConverter.getDividend() != 1) {
+            if (!rationalConverter.getExactDividend().equals(BigInteger.ONE)) {
                 if (continued) {
                     buffer.append('.');
                 }
-                buffer.append(rationalConverter.getDividend());
+                buffer.append(rationalConverter.getExactDividend());
             }
-            if (rationalConverter.getDivisor() != 1) {
+            if (!rationalConverter.getExactDivisor().equals(BigInteger.ONE)) {
                 buffer.append('/');
-                buffer.append(rationalConverter.getDivisor());
+                buffer.append(rationalConverter.getExactDivisor());
             }
         } else {
             throw new IllegalArgumentException("Unable to format units in UCUM (unsupported UnitConverter "+converter+")");
@@ -307,23 +465,85 @@ public abstract class UCUMFormat extends Format {
             pos.setErrorIndex(0);
             return null;
         }
-        UCUMParser parser = new UCUMParser(_symbolMap, new StringReader(source));
+        UnitEvents events = UnitEvents.INSTANCE;
+        Object event = (events == null) ? null : events.beginParse();
+        ParseCache cache = parseCache();
+        Object cached = (cache == null) ? null : cache.get(source);
+        Unit result;
+        UnitEvents.CacheOutcome outcome;
+        UnitMetrics metrics = UnitMetrics.getInstance();
+        if (cached != null) {
+            result = ParseCache.apply(cached, source, pos);
+            outcome = UnitEvents.CacheOutcome.HIT;
+            metrics.cacheHit(UnitMetrics.Cache.PARSE);
+        } else {
+            result = parse(source, pos);
+            if (cache != null) {
+                cache.put(source, result, pos);
+                outcome = UnitEvents.CacheOutcome.MISS;
+                metrics.cacheMiss(UnitMetrics.Cache.PARSE);
+            } else {
+                outcome = UnitEvents.CacheOutcome.UNCACHED;
+            }
+        }
+        metrics.parsed(this, result != null);
+        if (event != null) {
+            events.endParse(event, this, source, result, outcome);
+        }
+        return result;
+    }
+    
+    /**
+     * Parses the unit in a region of a character sequence, without copying
+     * the region and without the cache of parse results. The whole region 
+     * must be a UCUM unit.
+     * @param source the characters to parse
+     * @param start the index of the first character of the region
+     * @param end the index after the last character of the region
+     * @return the unit
+     * @throws java.text.ParseException if the region is not a valid UCUM 
+     *   unit; the error offset is an index in <code>source</code>
+     */
+    public Unit<?> parse (CharSequence source, int start, int end) throws java.text.ParseException {
+        if ((start < 0) || (end > source.length()) || (start > end)) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + source.length());
+        }
+        if (start == end) {
+            throw new java.text.ParseException("Empty unit", start);
+        }
+        UnitEvents events = UnitEvents.INSTANCE;
+        Object event = (events == null) ? null : events.beginParse();
+        Unit<?> result = null;
+        try {
+            result = new UCUMFormatParser(_symbolMap, source, start, end, isCaseSensitive()).parseUnit();
+            return result;
+        } finally {
+            UnitMetrics.getInstance().parsed(this, result != null);
+            if (event != null) {
+                events.endParse(event, this, source.subSequence(start, end), result, UnitEvents.CacheOutcome.UNCACHED);
+            }
+        }
+    }
+    
+    /** 
+     * Indicates if symbols are matched case-sensitively. Case-insensitive
+     * symbol maps hold upper-case symbols. 
+     */
+    boolean isCaseSensitive () {
+        return true;
+    }
+    
+    /** Parses a non-empty string, without the cache. */
+    private Unit parse (String source, ParsePosition pos) {
         try {
-            Unit result = parser.parseUnit();
+            Unit result = new UCUMFormatParser(_symbolMap, source, 0, source.length(), isCaseSensitive()).parseUnit();
             pos.setIndex(source.length());
             return result;
-        } catch (ParseException e) {
+        } catch (java.text.ParseException e) {
             // According to the general contract of java.text.Format, if an
             // error occurs, we set the error index of our ParsePosition, 
             // and return null
-            if (e.currentToken != null) {
-                pos.setErrorIndex(e.currentToken.endColumn);
-            } else {
-                pos.setErrorIndex(0);
-            }
-            return null;
-        } catch (TokenMgrError e) {
-            pos.setErrorIndex(0);
+            pos.setErrorIndex(e.getErrorOffset());
             return null;
         }
     }
@@ -337,8 +557,8 @@ public abstract class UCUMFormat extends Format {
         boolean formats = false;
         String formatted = "";
         try {
-            Unit u = (Unit)CS_INSTANCE.parseObject(input);
-            formatted = CS_INSTANCE.format(u);
+            Unit u = (Unit)getCaseSensitiveInstance().parseObject(input);
+            formatted = getCaseSensitiveInstance().format(u);
             formats = formatted.equals(input);
         } catch (java.text.ParseException e) {
             System.err.println("error parsing " + input);
@@ -0,0 +1,487 @@
+package org.ngs.ngunits.format;
+
+import org.ngs.ngunits.Unit;
+import org.ngs.ngunits.UnitMetrics;
+import org.ngs.ngunits.unit.AbstractUnit;
+import org.ngs.ngunits.unit.DefaultUnitDelegate;
+
+/**
+ * <p>
+ * Parser for {@link org.ngs.ngunits.Unit Unit}s in the
+ * <a href="http://aurora.regenstrief.org/~ucum/ucum.html">Uniform Code for
+ * Units of Measure</a>, reading a region of a <code>CharSequence</code>
+ * directly.
+ * <p>
+ * Tokens are recognized by a deterministic automaton driven by two tables:
+ * {@link #CLASSES}, which maps each ASCII character to a character class,
+ * and {@link #TRANSITIONS}, which maps a state and a character class to the
+ * next state. The longest prefix that ends in an accepting state is the
+ * token. When parsing case-insensitively, atoms are folded to upper case
+ * through {@link #FOLD_UPPER} as they are looked up, and annotations as
+ * they are copied, so the input is never copied as a whole.
+ * <p>
+ * Errors are reported as by the {@link UnitFormatParser}: at the end of the
+ * last token consumed for a syntax error, or at the start of the region for
+ * an unknown atom or a character that cannot start a token.
+ * <p>
+ * Instances are not thread-safe; create one per parse.
+ *
+ * @see <a href="http://aurora.regenstrief.org/~ucum/ucum.html">UCUM</a>
+ */
+final class UCUMFormatParser
+{
+    //////////////////
+    // Token kinds //
+    //////////////////
+
+    private static final int EOF = 0;
+    private static final int ANNOTATION = 1;
+    private static final int FACTOR = 2;
+    private static final int SIGN = 3;
+    private static final int DOT = 4;
+    private static final int SOLIDUS = 5;
+    private static final int ATOM = 6;
+    private static final int OPEN_PAREN = 7;
+    private static final int CLOSE_PAREN = 8;
+
+    ///////////////////////
+    // Character classes //
+    ///////////////////////
+
+    /** Characters that cannot appear in a token, and all non-ASCII characters. */
+    private static final int C_OTHER = 0;
+    /** "0" to "9" */
+    private static final int C_DIGIT = 1;
+    /** Characters that may end an atom: "!", "#" to "'", "*", ",", ":" to "Z", "\", "^" to "z", "|", "~" */
+    private static final int C_TERMINAL = 2;
+    private static final int C_OPEN_SQUARE = 3;
+    private static final int C_CLOSE_SQUARE = 4;
+    private static final int C_OPEN_CURLY = 5;
+    private static final int C_CLOSE_CURLY = 6;
+    private static final int C_SIGN = 7;
+    private static final int C_DOT = 8;
+    private static final int C_SOLIDUS = 9;
+    private static final int C_OPEN_PAREN = 10;
+    private static final int C_CLOSE_PAREN = 11;
+    /** The double quote, which may only appear in annotations and between square brackets. */
+    private static final int C_QUOTE = 12;
+    private static final int CLASS_COUNT = 13;
+
+    /** The class of each ASCII character. */
+    private static final byte[] CLASSES = new byte[128];
+
+    ////////////
+    // States //
+    ////////////
+
+    private static final int S_DEAD = 0;
+    private static final int S_START = 1;
+    /** Only digits: a factor, or the start of an atom. */
+    private static final int S_DIGITS = 2;
+    /** Atom characters ending in a digit, not all digits. */
+    private static final int S_ATOM_DIGIT = 3;
+    /** Atom characters ending in a terminal character. */
+    private static final int S_ATOM = 4;
+    /** After an opening square bracket. */
+    private static final int S_SQUARE_OPEN = 5;
+    /** Inside square brackets, after at least one character. */
+    private static final int S_SQUARE = 6;
+    /** After the closing square bracket. */
+    private static final int S_SQUARE_CLOSED = 7;
+    /** After the closing square bracket, atom characters ending in a digit. */
+    private static final int S_SUFFIX_DIGIT = 8;
+    /** After the closing square bracket, atom characters ending in a terminal character. */
+    private static final int S_SUFFIX = 9;
+    /** Inside curly braces. */
+    private static final int S_CURLY = 10;
+    private static final int S_ANNOTATION = 11;
+    private static final int S_SIGN = 12;
+    private static final int S_DOT = 13;
+    private static final int S_SOLIDUS = 14;
+    private static final int S_OPEN_PAREN = 15;
+    private static final int S_CLOSE_PAREN = 16;
+    private static final int STATE_COUNT = 17;
+
+    /** The next state for each state and character class. */
+    private static final byte[][] TRANSITIONS = new byte[STATE_COUNT][CLASS_COUNT];
+
+    /** The token kind accepted in each state, or <code>EOF</code> if none. */
+    private static final int[] ACCEPTS = new int[STATE_COUNT];
+
+    /** Identity mapping of ASCII characters, for case-sensitive parsing. */
+    private static final char[] FOLD_NONE = new char[128];
+
+    /** Upper-case mapping of ASCII characters, for case-insensitive parsing. */
+    private static final char[] FOLD_UPPER = new char[128];
+
+    static {
+        for (char c = '!'; c <= '~'; c += 1) {
+            CLASSES[c] = C_TERMINAL;
+        }
+        for (char c = '0'; c <= '9'; c += 1) {
+            CLASSES[c] = C_DIGIT;
+        }
+        CLASSES['['] = C_OPEN_SQUARE;
+        CLASSES[']'] = C_CLOSE_SQUARE;
+        CLASSES['{'] = C_OPEN_CURLY;
+        CLASSES['}'] = C_CLOSE_CURLY;
+        CLASSES['+'] = C_SIGN;
+        CLASSES['-'] = C_SIGN;
+        CLASSES['.'] = C_DOT;
+        CLASSES['/'] = C_SOLIDUS;
+        CLASSES['('] = C_OPEN_PAREN;
+        CLASSES[')'] = C_CLOSE_PAREN;
+        CLASSES['"'] = C_QUOTE;
+
+        transition(S_START, C_DIGIT, S_DIGITS);
+        transition(S_START, C_TERMINAL, S_ATOM);
+        transition(S_START, C_OPEN_SQUARE, S_SQUARE_OPEN);
+        transition(S_START, C_OPEN_CURLY, S_CURLY);
+        transition(S_START, C_SIGN, S_SIGN);
+        transition(S_START, C_DOT, S_DOT);
+        transition(S_START, C_SOLIDUS, S_SOLIDUS);
+        transition(S_START, C_OPEN_PAREN, S_OPEN_PAREN);
+        transition(S_START, C_CLOSE_PAREN, S_CLOSE_PAREN);
+        for (int state : new int[] { S_DIGITS, S_ATOM_DIGIT, S_ATOM }) {
+            transition(state, C_DIGIT, (state == S_DIGITS) ? S_DIGITS : S_ATOM_DIGIT);
+            transition(state, C_TERMINAL, S_ATOM);
+            transition(state, C_OPEN_SQUARE, S_SQUARE_OPEN);
+        }
+        // Any printable character but square brackets may appear between them.
+        for (int c = 0; c < CLASS_COUNT; c += 1) {
+            if ((c != C_OTHER) && (c != C_OPEN_SQUARE) && (c != C_CLOSE_SQUARE)) {
+                transition(S_SQUARE_OPEN, c, S_SQUARE);
+                transition(S_SQUARE, c, S_SQUARE);
+            }
+        }
+        transition(S_SQUARE, C_CLOSE_SQUARE, S_SQUARE_CLOSED);
+        for (int state : new int[] { S_SQUARE_CLOSED, S_SUFFIX_DIGIT, S_SUFFIX }) {
+            transition(state, C_DIGIT, S_SUFFIX_DIGIT);
+            transition(state, C_TERMINAL, S_SUFFIX);
+        }
+        // Any printable character but curly braces may appear between them.
+        for (int c = 0; c < CLASS_COUNT; c += 1) {
+            if ((c != C_OTHER) && (c != C_OPEN_CURLY) && (c != C_CLOSE_CURLY)) {
+                transition(S_CURLY, c, S_CURLY);
+            }
+        }
+        transition(S_CURLY, C_CLOSE_CURLY, S_ANNOTATION);
+
+        ACCEPTS[S_DIGITS] = FACTOR;
+        ACCEPTS[S_ATOM] = ATOM;
+        ACCEPTS[S_SQUARE_CLOSED] = ATOM;
+        ACCEPTS[S_SUFFIX] = ATOM;
+        ACCEPTS[S_ANNOTATION] = ANNOTATION;
+        ACCEPTS[S_SIGN] = SIGN;
+        ACCEPTS[S_DOT] = DOT;
+        ACCEPTS[S_SOLIDUS] = SOLIDUS;
+        ACCEPTS[S_OPEN_PAREN] = OPEN_PAREN;
+        ACCEPTS[S_CLOSE_PAREN] = CLOSE_PAREN;
+
+        for (char c = 0; c < 128; c += 1) {
+            FOLD_NONE[c] = c;
+            FOLD_UPPER[c] = ((c >= 'a') && (c <= 'z')) ? (char)(c - 'a' + 'A') : c;
+        }
+    }
+
+    /** */
+    private static void transition (int state, int characterClass, int next) {
+        TRANSITIONS[state][characterClass] = (byte)next;
+    }
+
+    ////////////////////////
+    // Instance variables //
+    ////////////////////////
+
+    /** */
+    private final SymbolMap _symbols;
+
+    /** */
+    private final CharSequence _source;
+
+    /** The start of the region being parsed. */
+    private final int _start;
+
+    /** The end of the region being parsed. */
+    private final int _end;
+
+    /** The case mapping applied to atoms and annotations. */
+    private final char[] _fold;
+
+    /** The index at which the next token not yet read starts. */
+    private int _next;
+
+    /** The end of the last token consumed. */
+    private int _consumed;
+
+    /** The kinds of the tokens read ahead, in a circular buffer. */
+    private final int[] _kinds = new int[4];
+
+    /** The starts of the tokens read ahead. */
+    private final int[] _starts = new int[4];
+
+    /** The ends of the tokens read ahead. */
+    private final int[] _ends = new int[4];
+
+    /** The index in the buffers of the next token. */
+    private int _head;
+
+    /** The number of tokens read ahead. */
+    private int _lookahead;
+
+    /** Scratch space for folding the text of a token. */
+    private char[] _text;
+
+    /** */
+    UCUMFormatParser (SymbolMap symbols, CharSequence source, int start, int end, boolean caseSensitive) {
+        _symbols = symbols;
+        _source = source;
+        _start = start;
+        _end = end;
+        _fold = caseSensitive ? FOLD_NONE : FOLD_UPPER;
+        _next = start;
+        _consumed = start;
+    }
+
+    /**
+     * Parses the whole region as a unit.
+     * @throws java.text.ParseException if the region is not a valid UCUM
+     *   unit.
+     */
+    Unit parseUnit () throws java.text.ParseException {
+        Unit result = term();
+        consume(EOF);
+        return result;
+    }
+
+    /////////////////
+    // Productions //
+    /////////////////
+
+    /** */
+    private Unit term () throws java.text.ParseException {
+        Unit result = component();
+        while (true) {
+            int k = kind(1);
+            if (k == DOT) {
+                consume(k);
+                result = result.multiply(component());
+            } else if (k == SOLIDUS) {
+                consume(k);
+                result = result.divide(component());
+            } else {
+                return result;
+            }
+        }
+    }
+
+    /** */
+    private Unit component () throws java.text.ParseException {
+        if (annotationAhead()) {
+            Unit result = annotatable();
+            String annotation = text(_starts[_head] + 1, _ends[_head] - 1);
+            consume(ANNOTATION);
+            return ((AbstractUnit)result).annotate(annotation);
+        }
+        switch (kind(1)) {
+            case ATOM:
+                return annotatable();
+            case ANNOTATION:
+                // Someday we should be able to annotate the unit one.
+                consume(ANNOTATION);
+                return DefaultUnitDelegate.INSTANCE.one();
+            case FACTOR: {
+                long factor = longValue(_starts[_head], _ends[_head]);
+                consume(FACTOR);
+                if (factor != 1) {
+                    return DefaultUnitDelegate.INSTANCE.one().multiply(factor);
+                } else {
+                    return DefaultUnitDelegate.INSTANCE.one();
+                }
+            }
+            case SOLIDUS:
+                consume(SOLIDUS);
+                return DefaultUnitDelegate.INSTANCE.one().divide(component());
+            case OPEN_PAREN: {
+                consume(OPEN_PAREN);
+                Unit result = term();
+                consume(CLOSE_PAREN);
+                return result;
+            }
+            default:
+                throw unexpected();
+        }
+    }
+
+    /** */
+    private Unit annotatable () throws java.text.ParseException {
+        if (exponentAhead()) {
+            Unit result = simpleUnit();
+            boolean negative = false;
+            if (kind(1) == SIGN) {
+                negative = (_source.charAt(_starts[_head]) == '-');
+                consume(SIGN);
+            }
+            int start = _starts[_head];
+            int end = _ends[_head];
+            consume(FACTOR);
+            int exponent = intValue(start, end);
+            return result.pow(negative ? -exponent : exponent);
+        }
+        if (kind(1) != ATOM) {
+            throw unexpected();
+        }
+        return simpleUnit();
+    }
+
+    /** */
+    private Unit simpleUnit () throws java.text.ParseException {
+        int start = _starts[_head];
+        int end = _ends[_head];
+        consume(ATOM);
+        SymbolMap.Entry entry = _symbols.lookup(_source, start, end, _fold);
+        if (entry == null) {
+            UnitMetrics.getInstance().unknownSymbol(_source, start, end);
+            throw new java.text.ParseException("Unknown atom: " + text(start, end), _start);
+        } else if (entry.prefix != null) {
+            return entry.unit.transform(entry.prefix.converter);
+        } else {
+            return entry.unit;
+        }
+    }
+
+    /**
+     * Indicates if the next tokens are an annotatable unit followed by an
+     * annotation. Reads ahead no further than needed to decide.
+     */
+    private boolean annotationAhead () throws java.text.ParseException {
+        if (kind(1) != ATOM) {
+            return false;
+        }
+        switch (kind(2)) {
+            case SIGN:
+                return (kind(3) == FACTOR) && (kind(4) == ANNOTATION);
+            case FACTOR:
+                return kind(3) == ANNOTATION;
+            case ANNOTATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Indicates if the next tokens are an atom followed by an exponent. */
+    private boolean exponentAhead () throws java.text.ParseException {
+        if (kind(1) != ATOM) {
+            return false;
+        }
+        int k = kind(2);
+        return (k == FACTOR) || ((k == SIGN) && (kind(3) == FACTOR));
+    }
+
+    ////////////
+    // Tokens //
+    ////////////
+
+    /** Returns the kind of the <code>n</code>th token ahead, reading it if necessary. */
+    private int kind (int n) throws java.text.ParseException {
+        while (_lookahead < n) {
+            int i = (_head + _lookahead) & 3;
+            _starts[i] = _next;
+            _kinds[i] = read();
+            _ends[i] = _next;
+            _lookahead += 1;
+        }
+        return _kinds[(_head + n - 1) & 3];
+    }
+
+    /** Consumes the next token, which must be of the given kind. */
+    private void consume (int kind) throws java.text.ParseException {
+        if (kind(1) != kind) {
+            throw unexpected();
+        }
+        _consumed = _ends[_head];
+        _head = (_head + 1) & 3;
+        _lookahead -= 1;
+    }
+
+    /** Returns the exception for an unexpected next token. */
+    private java.text.ParseException unexpected () {
+        String image = (_kinds[_head] == EOF) ? "end of input" : "\"" + _source.subSequence(_starts[_head], _ends[_head]) + "\"";
+        return new java.text.ParseException("Unexpected " + image, _consumed);
+    }
+
+    /**
+     * Reads the longest token starting at <code>_next</code>, advances
+     * <code>_next</code> past it and returns its kind.
+     */
+    private int read () throws java.text.ParseException {
+        int i = _next;
+        if (i >= _end) {
+            return EOF;
+        }
+        int state = S_START;
+        int accepted = EOF;
+        int acceptedEnd = i;
+        while (i < _end) {
+            char c = _source.charAt(i);
+            state = TRANSITIONS[state][(c < 128) ? CLASSES[c] : C_OTHER];
+            if (state == S_DEAD) {
+                break;
+            }
+            i += 1;
+            if (ACCEPTS[state] != EOF) {
+                accepted = ACCEPTS[state];
+                acceptedEnd = i;
+            }
+        }
+        if (accepted == EOF) {
+            throw new java.text.ParseException("Unexpected character '" + _source.charAt(_next) + "'", _start);
+        }
+        _next = acceptedEnd;
+        return accepted;
+    }
+
+    /** Returns the characters at the given indexes, folded. */
+    private String text (int start, int end) {
+        int length = end - start;
+        if ((_text == null) || (_text.length < length)) {
+            _text = new char[Math.max(length, 16)];
+        }
+        for (int i = 0; i < length; i += 1) {
+            // Tokens only contain ASCII characters.
+            _text[i] = _fold[_source.charAt(start + i)];
+        }
+        return new String(_text, 0, length);
+    }
+
+    /**
+     * Returns the value of the factor at the given indexes. Values that do
+     * not fit in a <code>long</code> are rejected as
+     * <code>Long.parseLong</code> rejects them.
+     */
+    private long longValue (int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i += 1) {
+            int digit = _source.charAt(i) - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                return Long.parseLong(_source.subSequence(start, end).toString());
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of the factor at the given indexes. Values that do
+     * not fit in an <code>int</code> are rejected as
+     * <code>Integer.parseInt</code> rejects them.
+     */
+    private int intValue (int start, int end) {
+        long value = longValue(start, end);
+        if (value > Integer.MAX_VALUE) {
+            return Integer.parseInt(_source.subSequence(start, end).toString());
+        }
+        return (int)value;
+    }
+}
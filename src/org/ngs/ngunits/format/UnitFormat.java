@@ -1,6 +1,8 @@
 package org.ngs.ngunits.format;
 
+import java.io.IOException;
 import java.io.StringReader;
+import java.math.BigInteger;
 import java.text.FieldPosition;
 import java.text.Format;
 import java.text.ParsePosition;
@@ -9,13 +11,16 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
-import java.util.ResourceBundle;
+import org.ngs.ngunits.BoundedCache;
 import org.ngs.ngunits.NonSI;
 import org.ngs.ngunits.Prefix;
 import org.ngs.ngunits.SI;
 import org.ngs.ngunits.Unit;
 import org.ngs.ngunits.UnitConverter;
+import org.ngs.ngunits.UnitEvents;
+import org.ngs.ngunits.UnitMetrics;
 import org.ngs.ngunits.converter.AddConverter;
+import org.ngs.ngunits.converter.AffineConverter;
 import org.ngs.ngunits.converter.LogConverter;
 import org.ngs.ngunits.converter.MultiplyConverter;
 import org.ngs.ngunits.converter.RationalConverter;
@@ -117,9 +122,11 @@ public class UnitFormat extends Format
     // Class variables                                  //
     //////////////////////////////////////////////////////
     
-    /** Default locale instance. If the default locale is changed after the class is
-       initialized, this instance will no longer be used. */
-    private static UnitFormat DEFAULT_INSTANCE = new UnitFormat(new SymbolMap(ResourceBundle.getBundle("org.ngs.ngunits.format.UnitFormat")));
+    /** Default number of parse results cached by each instance. */
+    public static final int DEFAULT_PARSE_CACHE_SIZE = 1024;
+    
+    /** Default number of formatted units cached by each instance. */
+    public static final int DEFAULT_FORMAT_CACHE_SIZE = 1024;
     
     /** Operator precedence for the addition and subtraction operations */
     public static final int ADDITION_PRECEDENCE = 0;
@@ -153,10 +160,10 @@ public class UnitFormat extends Format
      * @param locale
      */
     public static UnitFormat getInstance (Locale locale) {
-        if (locale.equals(DEFAULT_INSTANCE.getSymbols().getLocale())) {
-            return DEFAULT_INSTANCE;
+        if (locale.equals(DefaultInstance.INSTANCE.getSymbols().getLocale())) {
+            return DefaultInstance.INSTANCE;
         } else {
-            return new UnitFormat(new SymbolMap(ResourceBundle.getBundle("org.ngs.ngunits.format.UnitFormat", locale)));
+            return new UnitFormat(new SymbolMap("org.ngs.ngunits.format.UnitFormat", locale));
         }
     }
     
@@ -191,6 +198,18 @@ public class UnitFormat extends Format
      */
     protected boolean _asciiOnly;
     
+    /** Results of parsing by source string, or <code>null</code> if they are not cached. */
+    private volatile ParseCache _parseCache;
+    
+    /** Text of formatted units by unit, or <code>null</code> if it is not cached. */
+    private volatile FormatCache _formatCache;
+    
+    /** 
+     * Flag that determines whether the parser generated from UnitParser.jj 
+     * is used instead of the hand-written {@link UnitFormatParser}.
+     */
+    protected boolean _generatedParser;
+    
     //////////////////
     // Constructors //
     //////////////////
@@ -202,11 +221,15 @@ public class UnitFormat extends Format
         _symbolMap = symbolMap;
         _converterFormats = new HashMap<Class<? extends UnitConverter>,ConverterFormat>();
         _converterFormats.put(AddConverter.class, new AddConverterFormat());
+        _converterFormats.put(AffineConverter.class, new AffineConverterFormat());
         _converterFormats.put(LogConverter.Log.class, new LogConverterFormat());
         _converterFormats.put(LogConverter.Exp.class, new ExpConverterFormat());
         _converterFormats.put(MultiplyConverter.class, new MultiplyConverterFormat());
         _converterFormats.put(RationalConverter.class, new RationalConverterFormat());
         _asciiOnly = false;
+        _generatedParser = false;
+        _parseCache = new ParseCache(symbolMap, DEFAULT_PARSE_CACHE_SIZE, BoundedCache.Policy.SECOND_CHANCE);
+        _formatCache = new FormatCache(symbolMap, DEFAULT_FORMAT_CACHE_SIZE, BoundedCache.Policy.SECOND_CHANCE);
     }
     
     ////////////////////////
@@ -251,6 +274,111 @@ public class UnitFormat extends Format
      */
     public void setAsciiOnly (boolean newAsciiOnly) {
         _asciiOnly = newAsciiOnly;
+        clearFormatCache();
+    }
+    
+    /**
+     * Get the value of the setting that determines whether units are parsed
+     * by the parser generated by JavaCC rather than by the hand-written 
+     * parser. Both accept the same strings, return the same units and report
+     * the same error indexes; the hand-written parser allocates much less.
+     * @return boolean
+     */
+    public boolean getGeneratedParser () {
+        return _generatedParser;
+    }
+    
+    /**
+     * Sets the value of the flag that determines whether units are parsed
+     * by the parser generated by JavaCC rather than by the hand-written 
+     * parser, which is the default.
+     * @param newGeneratedParser boolean the new flag setting
+     */
+    public void setGeneratedParser (boolean newGeneratedParser) {
+        _generatedParser = newGeneratedParser;
+    }
+    
+    /**
+     * Returns the cache of parse results, for inspecting its hit and miss 
+     * counts, or <code>null</code> if parse results are not cached.
+     */
+    public BoundedCache<String,?> getParseCache () {
+        ParseCache cache = parseCache();
+        return (cache == null) ? null : cache.getResults();
+    }
+    
+    /**
+     * Replaces the cache of parse results with an empty one of the given 
+     * size and eviction policy. A size of zero disables caching. Cached 
+     * results are discarded whenever the symbol map is modified or replaced.
+     * @param size the maximum number of source strings to cache.
+     * @param policy the eviction policy.
+     */
+    public void setParseCache (int size, BoundedCache.Policy policy) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative cache size");
+        } else if (size == 0) {
+            _parseCache = null;
+        } else {
+            _parseCache = new ParseCache(_symbolMap, size, policy);
+        }
+    }
+    
+    /** Returns the cache of parse results, emptied if the symbol map has changed. */
+    private ParseCache parseCache () {
+        ParseCache cache = _parseCache;
+        if ((cache != null) && !cache.isCurrent(_symbolMap)) {
+            cache = cache.renew(_symbolMap);
+            _parseCache = cache;
+        }
+        return cache;
+    }
+    
+    /**
+     * Returns the cache of formatted units, for inspecting its hit and miss 
+     * counts, or <code>null</code> if formatted units are not cached.
+     */
+    public BoundedCache<?,?> getFormatCache () {
+        FormatCache cache = formatCache();
+        return (cache == null) ? null : cache.getResults();
+    }
+    
+    /**
+     * Replaces the cache of formatted units with an empty one of the given 
+     * size and eviction policy. A size of zero disables caching. Cached 
+     * text is discarded whenever the symbol map is modified or replaced,
+     * and whenever the settings that affect formatting are changed. Cached
+     * text is only used for the instance it was formatted from, so interning
+     * of units (see {@link DefaultUnitDelegate#setInterning}) improves hits.
+     * @param size the maximum number of units to cache.
+     * @param policy the eviction policy.
+     */
+    public void setFormatCache (int size, BoundedCache.Policy policy) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative cache size");
+        } else if (size == 0) {
+            _formatCache = null;
+        } else {
+            _formatCache = new FormatCache(_symbolMap, size, policy);
+        }
+    }
+    
+    /** Returns the cache of formatted units, emptied if the symbol map has changed. */
+    private FormatCache formatCache () {
+        FormatCache cache = _formatCache;
+        if ((cache != null) && !cache.isCurrent(_symbolMap)) {
+            cache = cache.renew(_symbolMap);
+            _formatCache = cache;
+        }
+        return cache;
+    }
+    
+    /** Empties the cache of formatted units. */
+    private void clearFormatCache () {
+        FormatCache cache = _formatCache;
+        if (cache != null) {
+            _formatCache = cache.renew(_symbolMap);
+        }
     }
     
     /**
@@ -261,6 +389,7 @@ public class UnitFormat extends Format
      */
     public void addConverterFormat (Class<? extends UnitConverter> c, ConverterFormat format) {
         _converterFormats.put(c, format);
+        clearFormatCache();
     }
     
     ////////////////
@@ -269,10 +398,68 @@ public class UnitFormat extends Format
     
     @Override
     public StringBuffer format (Object obj, StringBuffer buffer, FieldPosition pos) {
-        formatInternal((Unit<?>)obj, buffer);
+        if (formatCache() == null) {
+            UnitEvents events = UnitEvents.INSTANCE;
+            Object event = (events == null) ? null : events.beginFormat();
+            int start = buffer.length();
+            formatInternal((Unit<?>)obj, buffer);
+            if (event != null) {
+                events.endFormat(event, this, (Unit<?>)obj, buffer.substring(start), UnitEvents.CacheOutcome.UNCACHED);
+            }
+        } else {
+            buffer.append(text((Unit<?>)obj));
+        }
         return buffer;
     }
     
+    /**
+     * Formats the given unit to the given <code>StringBuilder</code>.
+     * @param unit the unit to be formatted
+     * @param builder the <code>StringBuilder</code> to append to
+     * @return <code>builder</code>
+     */
+    public StringBuilder format (Unit<?> unit, StringBuilder builder) {
+        return builder.append(text(unit));
+    }
+    
+    /**
+     * Formats the given unit to the given <code>Appendable</code>.
+     * @param unit the unit to be formatted
+     * @param out the <code>Appendable</code> to append to
+     * @return <code>out</code>
+     * @throws IOException if <code>out</code> does
+     */
+    public Appendable format (Unit<?> unit, Appendable out) throws IOException {
+        return out.append(text(unit));
+    }
+    
+    /** Returns the text of the given unit, from the cache if possible. */
+    private String text (Unit<?> unit) {
+        UnitEvents events = UnitEvents.INSTANCE;
+        Object event = (events == null) ? null : events.beginFormat();
+        FormatCache cache = formatCache();
+        String result = (cache == null) ? null : cache.get(unit);
+        UnitEvents.CacheOutcome outcome = UnitEvents.CacheOutcome.HIT;
+        if (result != null) {
+            UnitMetrics.getInstance().cacheHit(UnitMetrics.Cache.FORMAT);
+        } else {
+            StringBuffer buffer = new StringBuffer();
+            formatInternal(unit, buffer);
+            result = buffer.toString();
+            if (cache != null) {
+                cache.put(unit, result);
+                outcome = UnitEvents.CacheOutcome.MISS;
+                UnitMetrics.getInstance().cacheMiss(UnitMetrics.Cache.FORMAT);
+            } else {
+                outcome = UnitEvents.CacheOutcome.UNCACHED;
+            }
+        }
+        if (event != null) {
+            events.endFormat(event, this, unit, result, outcome);
+        }
+        return result;
+    }
+    
     /**
      * Format the given unit to the given StringBuffer, then return the operator
      * precedence of the outermost operator in the unit expression that was 
@@ -373,13 +560,12 @@ public class UnitFormat extends Format
         if (continued) {
             buffer.append(_asciiOnly ? '*' : '·');
         }
-        StringBuffer temp = new StringBuffer();
-        int unitPrecedence = formatInternal(unit, temp);
+        int start = buffer.length();
+        int unitPrecedence = formatInternal(unit, buffer);
         if (unitPrecedence < PRODUCT_PRECEDENCE) {
-            temp.insert(0, '(');
-            temp.append(')');
+            buffer.insert(start, '(');
+            buffer.append(')');
         }
-        buffer.append(temp);
         if (pow == 1) {
             // do nothing
         } else if ((pow > 1) && (!_asciiOnly)) {
@@ -453,6 +639,78 @@ public class UnitFormat extends Format
             pos.setErrorIndex(0);
             return null;
         }
+        UnitEvents events = UnitEvents.INSTANCE;
+        Object event = (events == null) ? null : events.beginParse();
+        ParseCache cache = parseCache();
+        Object cached = (cache == null) ? null : cache.get(source);
+        Unit result;
+        UnitEvents.CacheOutcome outcome;
+        UnitMetrics metrics = UnitMetrics.getInstance();
+        if (cached != null) {
+            result = ParseCache.apply(cached, source, pos);
+            outcome = UnitEvents.CacheOutcome.HIT;
+            metrics.cacheHit(UnitMetrics.Cache.PARSE);
+        } else {
+            result = parse(source, pos);
+            if (cache != null) {
+                cache.put(source, result, pos);
+                outcome = UnitEvents.CacheOutcome.MISS;
+                metrics.cacheMiss(UnitMetrics.Cache.PARSE);
+            } else {
+                outcome = UnitEvents.CacheOutcome.UNCACHED;
+            }
+        }
+        metrics.parsed(this, result != null);
+        if (event != null) {
+            events.endParse(event, this, source, result, outcome);
+        }
+        return result;
+    }
+    
+    /**
+     * Parses the unit in a region of a character sequence, without copying
+     * the region and without the cache of parse results. The whole region 
+     * must be a unit expression.
+     * @param source the characters to parse
+     * @param start the index of the first character of the region
+     * @param end the index after the last character of the region
+     * @return the unit
+     * @throws java.text.ParseException if the region is not a valid unit 
+     *   expression; the error offset is an index in <code>source</code>
+     */
+    public Unit<?> parse (CharSequence source, int start, int end) throws java.text.ParseException {
+        if ((start < 0) || (end > source.length()) || (start > end)) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + source.length());
+        }
+        if (start == end) {
+            throw new java.text.ParseException("Empty unit expression", start);
+        }
+        UnitEvents events = UnitEvents.INSTANCE;
+        Object event = (events == null) ? null : events.beginParse();
+        Unit<?> result = null;
+        try {
+            result = new UnitFormatParser(_symbolMap, source, start, end).parseUnit();
+            return result;
+        } finally {
+            UnitMetrics.getInstance().parsed(this, result != null);
+            if (event != null) {
+                events.endParse(event, this, source.subSequence(start, end), result, UnitEvents.CacheOutcome.UNCACHED);
+            }
+        }
+    }
+    
+    /** Parses a non-empty string, without the cache. */
+    private Unit parse (String source, ParsePosition pos) {
+        if (!_generatedParser) {
+            try {
+                Unit result = new UnitFormatParser(_symbolMap, source, 0, source.length()).parseUnit();
+                pos.setIndex(source.length());
+                return result;
+            } catch (java.text.ParseException e) {
+                pos.setErrorIndex(e.getErrorOffset());
+                return null;
+            }
+        }
         try {
             UnitParser parser = new UnitParser(_symbolMap, new StringReader(source));
             Unit result = parser.parseUnit();
@@ -478,6 +736,14 @@ public class UnitFormat extends Format
     // Inner classes //
     ///////////////////
     
+    /** 
+     * Holds the default locale instance, so its symbols are not read until it 
+     * is used. If the default locale is changed after it is created, this 
+     * instance will no longer be used. 
+     */
+    private static final class DefaultInstance {
+        static final UnitFormat INSTANCE = new UnitFormat(new SymbolMap("org.ngs.ngunits.format.UnitFormat", Locale.getDefault()));
+    }
     
     private static class AddConverterFormat implements ConverterFormat 
     {
@@ -509,6 +775,46 @@ public class UnitFormat extends Format
         }
     }
     
+    private static class AffineConverterFormat implements ConverterFormat 
+    {
+        AffineConverterFormat() { }
+        
+        public int formatConverter (UnitConverter converter, 
+                                    boolean continued, 
+                                    int unitPrecedence, 
+                                    StringBuffer buffer,
+                                    boolean ascii) {
+            if (unitPrecedence < PRODUCT_PRECEDENCE) {
+                buffer.insert(0, '(');
+                buffer.append(')');
+            }
+            if (continued) {
+                buffer.append(ascii ? '*' : '·');
+            }
+            double factor = ((AffineConverter)converter).getFactor();
+            long lFactor = (long)factor;
+            if (lFactor == factor) {
+                buffer.append(lFactor);
+            } else {
+                buffer.append(factor);
+            }
+            double offset = ((AffineConverter)converter).getOffset();
+            if (offset < 0) {
+                buffer.append("-");
+                offset = -offset;
+            } else {
+                buffer.append("+");
+            }
+            long lOffset = (long)offset;
+            if (lOffset == offset) {
+                buffer.append(lOffset);
+            } else {
+                buffer.append(offset);
+            }
+            return ADDITION_PRECEDENCE;
+        }
+    }
+    
     private static class LogConverterFormat implements ConverterFormat 
     {
         LogConverterFormat () { }
@@ -605,15 +911,15 @@ public class UnitFormat extends Format
                 buffer.append(')');
             }
             RationalConverter rationalConverter = (RationalConverter)converter;
-            if (rationalConverter.getDividend() != 1) {
+            if (!rationalConverter.getExactDividend().equals(BigInteger.ONE)) {
                 if (continued) {
                     buffer.append(ascii ? '*' : '·');
                 }
-                buffer.append(rationalConverter.getDividend());
+                buffer.append(rationalConverter.getExactDividend());
             }
-            if (rationalConverter.getDivisor() != 1) {
+            if (!rationalConverter.getExactDivisor().equals(BigInteger.ONE)) {
                 buffer.append('/');
-                buffer.append(rationalConverter.getDivisor());
+                buffer.append(rationalConverter.getExactDivisor());
             }
             return PRODUCT_PRECEDENCE;
         }
@@ -628,8 +934,8 @@ public class UnitFormat extends Format
         String formatted = "";
         boolean formats = false;
         try {
-            Unit u = (Unit)DEFAULT_INSTANCE.parseObject(input);
-            formatted = DEFAULT_INSTANCE.format(u);
+            Unit u = (Unit)DefaultInstance.INSTANCE.parseObject(input);
+            formatted = DefaultInstance.INSTANCE.format(u);
             formats = formatted.equals(input);
         } catch (java.text.ParseException e) { }   
         System.out.println(input + " " + formats + (formats ? "" : ", " + formatted));
@@ -650,10 +956,10 @@ public class UnitFormat extends Format
         
         // Test locales
         System.out.println(Locale.getDefault());
-        System.out.println("  "+DEFAULT_INSTANCE.format(NonSI.GALLON_LIQUID_US));
-        System.out.println("  "+DEFAULT_INSTANCE.format(NonSI.OUNCE_LIQUID_US));
-        System.out.println("  "+DEFAULT_INSTANCE.format(NonSI.GALLON_UK));
-        System.out.println("  "+DEFAULT_INSTANCE.format(NonSI.OUNCE_LIQUID_UK));
+        System.out.println("  "+DefaultInstance.INSTANCE.format(NonSI.GALLON_LIQUID_US));
+        System.out.println("  "+DefaultInstance.INSTANCE.format(NonSI.OUNCE_LIQUID_US));
+        System.out.println("  "+DefaultInstance.INSTANCE.format(NonSI.GALLON_UK));
+        System.out.println("  "+DefaultInstance.INSTANCE.format(NonSI.OUNCE_LIQUID_UK));
         System.out.println(Locale.UK);
         UnitFormat test = UnitFormat.getInstance(Locale.UK);
         System.out.println("  "+test.format(NonSI.GALLON_LIQUID_US));
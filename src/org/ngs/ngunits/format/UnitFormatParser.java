@@ -0,0 +1,522 @@
+package org.ngs.ngunits.format;
+
+import org.ngs.ngunits.Unit;
+import org.ngs.ngunits.UnitMetrics;
+import org.ngs.ngunits.converter.LogConverter;
+import org.ngs.ngunits.unit.DefaultUnitDelegate;
+
+/**
+ * A recursive-descent parser for the grammar documented in
+ * {@link UnitFormat}, equivalent to the generated {@link UnitParser}. It
+ * reads a region of a <code>CharSequence</code> directly, keeps at most two
+ * tokens of lookahead as indexes into the region rather than
+ * <code>Token</code> objects, and accumulates integers without boxing them.
+ * <p>
+ * Tokens are matched as the generated token manager matches them (longest
+ * match first, then the token declared first in <code>UnitParser.jj</code>),
+ * and are read no further ahead than the generated parser reads them, so
+ * both parsers accept the same strings, return equal units and report the
+ * same error index: the end of the last token consumed for a syntax error,
+ * or the start of the region for an unknown symbol or a character that
+ * cannot start a token.
+ * <p>
+ * Instances are not thread-safe; create one per parse.
+ */
+final class UnitFormatParser implements UnitParserConstants
+{
+    /** */
+    private final SymbolMap _symbols;
+
+    /** */
+    private final CharSequence _source;
+
+    /** The start of the region being parsed. */
+    private final int _start;
+
+    /** The end of the region being parsed. */
+    private final int _end;
+
+    /** The index at which the next token not yet read starts. */
+    private int _next;
+
+    /** The start of the token last read by {@link #read}. */
+    private int _tokenStart;
+
+    /** The end of the last token consumed. */
+    private int _consumed;
+
+    /** The number of tokens read ahead, 0 to 2. */
+    private int _lookahead;
+
+    /** */
+    private int _kind0, _start0, _end0;
+
+    /** */
+    private int _kind1, _start1, _end1;
+
+    /** */
+    UnitFormatParser (SymbolMap symbols, CharSequence source, int start, int end) {
+        _symbols = symbols;
+        _source = source;
+        _start = start;
+        _end = end;
+        _next = start;
+        _consumed = start;
+    }
+
+    /**
+     * Parses the whole region as a unit.
+     * @throws java.text.ParseException if the region is not a valid unit
+     *   expression.
+     */
+    Unit parseUnit () throws java.text.ParseException {
+        Unit result = addExpr();
+        consume(EOF);
+        return result;
+    }
+
+    /////////////////
+    // Productions //
+    /////////////////
+
+    /** */
+    private Unit addExpr () throws java.text.ParseException {
+        double n1 = 0;
+        int sign1 = 0;
+        int k = peek();
+        if (((k == INTEGER) || (k == FLOATING_POINT)) && (((k = peek2()) == PLUS) || (k == MINUS))) {
+            n1 = numberExpr();
+            sign1 = sign();
+        }
+        Unit result = mulExpr();
+        double n2 = 0;
+        int sign2 = 0;
+        k = peek();
+        if ((k == PLUS) || (k == MINUS)) {
+            sign2 = sign();
+            n2 = numberExpr();
+        }
+        if (sign1 != 0) {
+            if (sign1 < 0) {
+                result = result.multiply(-1);
+            }
+            result = result.add(n1);
+        }
+        if (sign2 != 0) {
+            result = result.add((sign2 < 0) ? -n2 : n2);
+        }
+        return result;
+    }
+
+    /** */
+    private Unit mulExpr () throws java.text.ParseException {
+        Unit result = exponentExpr();
+        while (true) {
+            int k = peek();
+            if ((k == ASTERISK) || (k == MIDDLE_DOT)) {
+                consume(k);
+                result = result.multiply(exponentExpr());
+            } else if (k == SOLIDUS) {
+                consume(k);
+                result = result.divide(exponentExpr());
+            } else {
+                return result;
+            }
+        }
+    }
+
+    /** */
+    private Unit exponentExpr () throws java.text.ParseException {
+        int k = peek();
+        if (((k == INTEGER) || (k == E)) && (peek2() == CARET)) {
+            int baseStart = _start0;
+            int baseEnd = _end0;
+            consume(k);
+            consume(CARET);
+            Unit result = atomicExpr();
+            double base = (k == INTEGER) ? intValue(baseStart, baseEnd) : StrictMath.E;
+            return result.transform(new LogConverter.Exp(base));
+        }
+        switch (k) {
+            case OPEN_PAREN:
+            case INTEGER:
+            case FLOATING_POINT:
+            case UNIT_IDENTIFIER: {
+                Unit result = atomicExpr();
+                k = peek();
+                if (k == CARET) {
+                    consume(k);
+                    result = caretExponent(result);
+                } else if (k == SUPERSCRIPT_INTEGER) {
+                    int pow = superscriptValue(_start0, _end0);
+                    consume(k);
+                    if (pow != 1) {
+                        result = result.pow(pow);
+                    }
+                }
+                return result;
+            }
+            case LOG:
+            case NAT_LOG: {
+                int baseKind = k;
+                int baseStart = _start0;
+                int baseEnd = _end0;
+                consume(k);
+                if ((k == LOG) && (peek() == INTEGER)) {
+                    baseKind = INTEGER;
+                    baseStart = _start0;
+                    baseEnd = _end0;
+                    consume(INTEGER);
+                }
+                consume(OPEN_PAREN);
+                Unit result = addExpr();
+                consume(CLOSE_PAREN);
+                double base = 10;
+                if (baseKind == INTEGER) {
+                    base = intValue(baseStart, baseEnd);
+                } else if (baseKind == NAT_LOG) {
+                    base = StrictMath.E;
+                }
+                return result.transform(new LogConverter.Log(base));
+            }
+            default:
+                throw unexpected();
+        }
+    }
+
+    /** */
+    private Unit atomicExpr () throws java.text.ParseException {
+        switch (peek()) {
+            case INTEGER:
+            case FLOATING_POINT:
+                return DefaultUnitDelegate.INSTANCE.one().multiply(numberExpr());
+            case UNIT_IDENTIFIER: {
+                int start = _start0;
+                int end = _end0;
+                consume(UNIT_IDENTIFIER);
+                SymbolMap.Entry entry = _symbols.lookup(_source, start, end);
+                if (entry == null) {
+                    UnitMetrics.getInstance().unknownSymbol(_source, start, end);
+                    throw new java.text.ParseException("Unknown symbol: " + _source.subSequence(start, end), _start);
+                } else if (entry.prefix != null) {
+                    return entry.unit.transform(entry.prefix.converter);
+                } else {
+                    return entry.unit;
+                }
+            }
+            case OPEN_PAREN: {
+                consume(OPEN_PAREN);
+                Unit result = addExpr();
+                consume(CLOSE_PAREN);
+                return result;
+            }
+            default:
+                throw unexpected();
+        }
+    }
+
+    /** Returns -1 for a minus sign and 1 for a plus sign. */
+    private int sign () throws java.text.ParseException {
+        int k = peek();
+        if ((k != PLUS) && (k != MINUS)) {
+            throw unexpected();
+        }
+        consume(k);
+        return (k == MINUS) ? -1 : 1;
+    }
+
+    /** */
+    private double numberExpr () throws java.text.ParseException {
+        int k = peek();
+        int start = _start0;
+        int end = _end0;
+        if (k == INTEGER) {
+            consume(k);
+            return longValue(start, end);
+        } else if (k == FLOATING_POINT) {
+            consume(k);
+            return Double.parseDouble(_source.subSequence(start, end).toString());
+        } else {
+            throw unexpected();
+        }
+    }
+
+    /**
+     * Parses the exponent following a caret and applies it to
+     * <code>unit</code>. As in the generated parser, the integers of a
+     * parenthesized exponent are only converted once it is complete.
+     */
+    private Unit caretExponent (Unit unit) throws java.text.ParseException {
+        int pow;
+        int root = 1;
+        int k = peek();
+        if ((k == PLUS) || (k == MINUS) || (k == INTEGER)) {
+            int powSign = optionalSign();
+            pow = powSign * integer();
+        } else if (k == OPEN_PAREN) {
+            consume(k);
+            int powSign = optionalSign();
+            int powStart = _start0;
+            int powEnd = _end0;
+            consume(INTEGER);
+            int rootSign = 0;
+            int rootStart = -1;
+            int rootEnd = -1;
+            if (peek() == SOLIDUS) {
+                consume(SOLIDUS);
+                rootSign = optionalSign();
+                rootStart = _start0;
+                rootEnd = _end0;
+                consume(INTEGER);
+            }
+            consume(CLOSE_PAREN);
+            pow = powSign * intValue(powStart, powEnd);
+            if (rootStart >= 0) {
+                root = rootSign * intValue(rootStart, rootEnd);
+            }
+        } else {
+            throw unexpected();
+        }
+        if (pow != 1) {
+            unit = unit.pow(pow);
+        }
+        if (root != 1) {
+            unit = unit.root(root);
+        }
+        return unit;
+    }
+
+    /**
+     * Consumes a sign if there is one, returning -1 for a minus sign and 1
+     * otherwise. Leaves the next token read.
+     */
+    private int optionalSign () throws java.text.ParseException {
+        int k = peek();
+        int result = ((k == PLUS) || (k == MINUS)) ? sign() : 1;
+        peek();
+        return result;
+    }
+
+    /** Consumes an integer token and returns its value. */
+    private int integer () throws java.text.ParseException {
+        int start = _start0;
+        int end = _end0;
+        consume(INTEGER);
+        return intValue(start, end);
+    }
+
+    ////////////
+    // Tokens //
+    ////////////
+
+    /** Returns the kind of the next token, reading it if necessary. */
+    private int peek () throws java.text.ParseException {
+        if (_lookahead == 0) {
+            _kind0 = read();
+            _start0 = _tokenStart;
+            _end0 = _next;
+            _lookahead = 1;
+        }
+        return _kind0;
+    }
+
+    /** Returns the kind of the token after the next one, reading it if necessary. */
+    private int peek2 () throws java.text.ParseException {
+        peek();
+        if (_lookahead == 1) {
+            _kind1 = read();
+            _start1 = _tokenStart;
+            _end1 = _next;
+            _lookahead = 2;
+        }
+        return _kind1;
+    }
+
+    /** Consumes the next token, which must be of the given kind. */
+    private void consume (int kind) throws java.text.ParseException {
+        if (peek() != kind) {
+            throw unexpected();
+        }
+        _consumed = _end0;
+        _kind0 = _kind1;
+        _start0 = _start1;
+        _end0 = _end1;
+        _lookahead -= 1;
+    }
+
+    /** Returns the exception for an unexpected next token. */
+    private java.text.ParseException unexpected () {
+        String image = (_kind0 == EOF) ? "end of input" : "\"" + _source.subSequence(_start0, _end0) + "\"";
+        return new java.text.ParseException("Unexpected " + image, _consumed);
+    }
+
+    /**
+     * Reads the token at <code>_next</code>, sets <code>_tokenStart</code>
+     * and advances <code>_next</code> past it, and returns its kind.
+     */
+    private int read () throws java.text.ParseException {
+        int i = _next;
+        _tokenStart = i;
+        if (i >= _end) {
+            return EOF;
+        }
+        char c = _source.charAt(i);
+        switch (c) {
+            case '+': _next = i + 1; return PLUS;
+            case '-': _next = i + 1; return MINUS;
+            case '*': _next = i + 1; return ASTERISK;
+            case '\u00B7': _next = i + 1; return MIDDLE_DOT;
+            case '/': _next = i + 1; return SOLIDUS;
+            case '^': _next = i + 1; return CARET;
+            case '(': _next = i + 1; return OPEN_PAREN;
+            case ')': _next = i + 1; return CLOSE_PAREN;
+        }
+        if (isDigit(c) || (c == '.')) {
+            return readNumber(i);
+        } else if (isSuperscriptDigit(c)) {
+            int j = i + 1;
+            while ((j < _end) && isSuperscriptDigit(_source.charAt(j))) {
+                j += 1;
+            }
+            _next = j;
+            return SUPERSCRIPT_INTEGER;
+        } else if ((c > ' ') && (c != ':')) {
+            int j = i + 1;
+            while ((j < _end) && isExtendedChar(_source.charAt(j))) {
+                j += 1;
+            }
+            _next = j;
+            int length = j - i;
+            if ((length == 3) && (c == 'l') && (_source.charAt(i + 1) == 'o') && (_source.charAt(i + 2) == 'g')) {
+                return LOG;
+            } else if ((length == 2) && (c == 'l') && (_source.charAt(i + 1) == 'n')) {
+                return NAT_LOG;
+            } else if ((length == 1) && (c == 'e')) {
+                return E;
+            } else {
+                return UNIT_IDENTIFIER;
+            }
+        } else {
+            throw new java.text.ParseException("Unexpected character '" + c + "'", _start);
+        }
+    }
+
+    /**
+     * Reads an integer or a floating point number starting with a digit or
+     * a decimal point at <code>i</code>.
+     */
+    private int readNumber (int i) throws java.text.ParseException {
+        int j = skipDigits(i);
+        int integerEnd = j;
+        if ((j < _end) && (_source.charAt(j) == '.')) {
+            int fractionEnd = skipDigits(j + 1);
+            if (fractionEnd > j + 1) {
+                j = fractionEnd;
+            }
+        }
+        if (j == i) {
+            throw new java.text.ParseException("Unexpected character '.'", _start);
+        }
+        int mantissaEnd = j;
+        if ((j < _end) && ((_source.charAt(j) == 'e') || (_source.charAt(j) == 'E'))) {
+            int k = j + 1;
+            if ((k < _end) && ((_source.charAt(k) == '+') || (_source.charAt(k) == '-'))) {
+                k += 1;
+            }
+            int exponentEnd = skipDigits(k);
+            if (exponentEnd > k) {
+                j = exponentEnd;
+            }
+        }
+        _next = j;
+        return ((j == integerEnd) && (mantissaEnd == integerEnd)) ? INTEGER : FLOATING_POINT;
+    }
+
+    /** */
+    private int skipDigits (int i) {
+        while ((i < _end) && isDigit(_source.charAt(i))) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /** */
+    private static boolean isDigit (char c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+    /** */
+    private static boolean isSuperscriptDigit (char c) {
+        switch (c) {
+            case '\u2070': case '\u00B9': case '\u00B2': case '\u00B3': case '\u2074':
+            case '\u2075': case '\u2076': case '\u2077': case '\u2078': case '\u2079':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Indicates if the given character may follow the first character of a unit identifier. */
+    private static boolean isExtendedChar (char c) {
+        switch (c) {
+            case '(': case ')': case '*': case '+': case '-': case '.': case '/': case ':': case '^': case '\u00B7':
+                return false;
+            default:
+                return (c > ' ') && !isSuperscriptDigit(c);
+        }
+    }
+
+    ////////////
+    // Values //
+    ////////////
+
+    /**
+     * Returns the value of the integer token at the given indexes. Values
+     * that do not fit in a <code>long</code> are rejected as
+     * <code>Long.valueOf</code> rejects them.
+     */
+    private long longValue (int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i += 1) {
+            int digit = _source.charAt(i) - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                return Long.parseLong(_source.subSequence(start, end).toString());
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of the integer token at the given indexes. Values
+     * that do not fit in an <code>int</code> are rejected as
+     * <code>Integer.parseInt</code> rejects them.
+     */
+    private int intValue (int start, int end) {
+        long value = longValue(start, end);
+        if (value > Integer.MAX_VALUE) {
+            return Integer.parseInt(_source.subSequence(start, end).toString());
+        }
+        return (int)value;
+    }
+
+    /** Returns the value of the superscript integer token at the given indexes. */
+    private int superscriptValue (int start, int end) {
+        int pow = 0;
+        for (int i = start; i < end; i += 1) {
+            pow *= 10;
+            switch (_source.charAt(i)) {
+                case '\u00B9': pow += 1; break;
+                case '\u00B2': pow += 2; break;
+                case '\u00B3': pow += 3; break;
+                case '\u2074': pow += 4; break;
+                case '\u2075': pow += 5; break;
+                case '\u2076': pow += 6; break;
+                case '\u2077': pow += 7; break;
+                case '\u2078': pow += 8; break;
+                case '\u2079': pow += 9; break;
+            }
+        }
+        return pow;
+    }
+}
@@ -3,32 +3,149 @@ package org.ngs.ngunits.format;
 import java.lang.reflect.Field;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 import org.ngs.ngunits.Unit;
 
 /**
- * The UnitMetadata class provides a set of mappings between 
+ * The UnitMetadata class provides a set of mappings between
  * {@link org.ngs.ngunits.Unit Units} and extended descriptions
  * and {@link org.ngs.ngunits.quantity.Quantity Quantities} for those
  * units, so that the descriptions and quantity names may be localized.
  * <p>
+ * Property names are case-insensitive. Each name is given a small id,
+ * and the values of each property are kept in an array indexed by unit
+ * id. The bundle is not read until the metadata are first used.
+ * <p>
  * TODO: Document the individual fields and methods
  */
 public class UnitMetadata {
-    
+
+    /** The property holding the name of a unit. */
+    public static final String NAME = "NAME";
+
+    /** The property holding the name of the quantity a unit measures. */
+    public static final String QUANTITY = "QUANTITY";
+
+    /** */
+    private static final String BUNDLE = "org.ngs.ngunits.format.UnitMetadata";
+
+    /** Instances for the built-in bundle, by requested locale. */
+    private static final ConcurrentHashMap<Locale,UnitMetadata> INSTANCES = new ConcurrentHashMap<Locale,UnitMetadata>();
+
+    /** Returns the metadata in the built-in bundle for the current default locale. */
+    public static UnitMetadata getInstance () {
+        return getInstance(Locale.getDefault());
+    }
+
+    /** Returns the metadata in the built-in bundle for the given locale, which are shared. */
+    public static UnitMetadata getInstance (Locale locale) {
+        UnitMetadata result = INSTANCES.get(locale);
+        if (result == null) {
+            result = new UnitMetadata(BUNDLE, locale);
+            UnitMetadata existing = INSTANCES.putIfAbsent(locale, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    /** The base name of the bundle, or <code>null</code> if it was given. */
+    private final String _baseName;
+
+    /** */
+    private final Locale _requestedLocale;
+
+    /** The bundle, until it has been read. */
+    private ResourceBundle _bundle;
+
     /** */
     private Locale _locale;
-    
+
+    /** */
+    private volatile boolean _loaded;
+
+    /**
+     * Property ids by name. Holds the upper-case name of each property,
+     * and any other spelling it has been looked up by.
+     */
+    private final ConcurrentHashMap<String,Integer> _propertyIds;
+
+    /** */
+    private final ConcurrentHashMap<Unit,Integer> _unitIds;
+
+    /** Property names by id. */
+    private volatile String[] _propertyNames;
+
+    /** Values by property id, then by unit id; replaced when either grows. */
+    private volatile String[][] _values;
+
     /** */
-    private Map<Unit, Map<String,String>> _metadata;
-    
+    private int _unitCount;
+
     /** */
     public UnitMetadata (ResourceBundle rb) {
-        _locale = rb.getLocale();
-        _metadata = new HashMap<Unit, Map<String,String>>();
+        this(rb, null);
+    }
+
+    /**
+     * Creates the metadata in the bundle with the given base name, found
+     * as by {@link ResourceBundle#getBundle(String, Locale)}. If a table
+     * was generated from the bundle when building (see {@link SymbolTable}),
+     * its fields are not looked up by reflection.
+     */
+    public UnitMetadata (String baseName, Locale locale) {
+        this(null, baseName, locale);
+    }
+
+    /**
+     * Creates the metadata in the given bundle, or in the table generated
+     * from it if it was loaded with the given base name.
+     * @param baseName the base name of the bundle, or <code>null</code>
+     */
+    protected UnitMetadata (ResourceBundle rb, String baseName) {
+        this(rb, baseName, rb.getLocale());
+    }
+
+    /** */
+    private UnitMetadata (ResourceBundle rb, String baseName, Locale locale) {
+        _bundle = rb;
+        _baseName = baseName;
+        _requestedLocale = locale;
+        _propertyIds = new ConcurrentHashMap<String,Integer>();
+        _unitIds = new ConcurrentHashMap<Unit,Integer>();
+        _propertyNames = new String[0];
+        _values = new String[0][];
+    }
+
+    /** Reads the bundle, or the table generated from it, if it has not been read. */
+    private void load () {
+        if (_loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (_loaded) {
+                return;
+            }
+            ResourceBundle rb = (_bundle != null) ? _bundle : ResourceBundle.getBundle(_baseName, _requestedLocale);
+            _locale = rb.getLocale();
+            SymbolTable table = (_baseName != null) ? SymbolTable.forBundle(_baseName, _locale) : null;
+            if (table != null) {
+                table.load(this);
+            } else {
+                read(rb);
+            }
+            _bundle = null;
+            _loaded = true;
+        }
+    }
+
+    /** */
+    private void read (ResourceBundle rb) {
         for (Enumeration<String> keys = rb.getKeys(); keys.hasMoreElements();) {
             String key = keys.nextElement();
             int lastDot = key.lastIndexOf('.');
@@ -41,12 +158,7 @@ public class UnitMetadata {
                 Field field = c.getField(fieldName);
                 Object value = field.get(null);
                 if (value instanceof Unit) {
-                    Map<String,String> metadata = _metadata.get(value);
-                    if (metadata == null) {
-                        metadata = new HashMap<String,String>();
-                        _metadata.put((Unit)value, metadata);
-                    }
-                    metadata.put(propertyName.toUpperCase(), rb.getString(key));
+                    store((Unit)value, propertyName, rb.getString(key));
                 }
             } catch (Exception e) {
                 System.err.println("ERROR reading Unit names: " + e.toString());
@@ -57,34 +169,91 @@ public class UnitMetadata {
 
     /** */
     public Locale getLocale () {
+        load();
         return _locale;
     }
-    
+
     /** */
     public String getProperty (Unit unit, String property) {
-        Map<String,String> metadata = _metadata.get(unit);
-        if (metadata != null) {
-            return metadata.get(property.toUpperCase());
+        load();
+        int propertyId = getPropertyId(property);
+        Integer unitId = _unitIds.get(unit);
+        if ((propertyId < 0) || (unitId == null)) {
+            return null;
         }
-        return null;
+        String[][] values = _values;
+        return (propertyId < values.length) && (unitId.intValue() < values[propertyId].length)
+               ? values[propertyId][unitId.intValue()] : null;
     }
-    
+
     /** */
     public void putProperty (Unit unit, String property, String value) {
-        Map<String,String> metadata = _metadata.get(unit);
-        if (metadata == null) {
-            metadata = new HashMap<String,String>();
-            _metadata.put(unit, metadata);
-        }
-        metadata.put(property.toUpperCase(), value);
+        load();
+        store(unit, property, value);
     }
-    
+
     /** */
     public Map<String,String> getProperties (Unit unit) {
-        Map<String,String> metadata = _metadata.get(unit);
-        if (metadata != null) {
-            return Collections.unmodifiableMap(metadata);
+        load();
+        Integer unitId = _unitIds.get(unit);
+        if (unitId == null) {
+            return null;
+        }
+        String[] names = _propertyNames;
+        String[][] values = _values;
+        Map<String,String> result = new LinkedHashMap<String,String>();
+        for (int i = 0; (i < names.length) && (i < values.length); i += 1) {
+            if ((unitId.intValue() < values[i].length) && (values[i][unitId.intValue()] != null)) {
+                result.put(names[i], values[i][unitId.intValue()]);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /** Returns the id of the given property, or -1 if no unit has it. */
+    private int getPropertyId (String property) {
+        Integer id = _propertyIds.get(property);
+        if (id == null) {
+            id = _propertyIds.get(property.toUpperCase());
+            if (id == null) {
+                return -1;
+            }
+            _propertyIds.putIfAbsent(property, id);
+        }
+        return id.intValue();
+    }
+
+    /** Sets a property of a unit, without reading the bundle first. */
+    synchronized void store (Unit unit, String property, String value) {
+        String name = property.toUpperCase();
+        Integer propertyId = _propertyIds.get(name);
+        if (propertyId == null) {
+            String[] names = new String[_propertyNames.length + 1];
+            System.arraycopy(_propertyNames, 0, names, 0, _propertyNames.length);
+            names[_propertyNames.length] = name;
+            String[][] values = new String[_values.length + 1][];
+            System.arraycopy(_values, 0, values, 0, _values.length);
+            values[_values.length] = new String[(_values.length > 0) ? _values[0].length : 16];
+            propertyId = Integer.valueOf(_propertyNames.length);
+            _propertyNames = names;
+            _values = values;
+            _propertyIds.put(name, propertyId);
+        }
+        Integer unitId = _unitIds.get(unit);
+        int index = (unitId != null) ? unitId.intValue() : _unitCount;
+        String[][] values = _values;
+        if (index >= values[0].length) {
+            values = new String[values.length][];
+            for (int i = 0; i < values.length; i += 1) {
+                values[i] = new String[_values[i].length * 2];
+                System.arraycopy(_values[i], 0, values[i], 0, _values[i].length);
+            }
+            _values = values;
+        }
+        values[propertyId.intValue()][index] = value;
+        if (unitId == null) {
+            _unitCount += 1;
+            _unitIds.put(unit, Integer.valueOf(index));
         }
-        return null;
     }
 }
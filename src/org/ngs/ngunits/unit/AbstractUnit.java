@@ -13,6 +13,9 @@ public abstract class AbstractUnit implements Unit
 {
     public final UnitDelegate delegate;
     
+    /** The dimension, computed and cached by the delegate; racy but idempotent. */
+    Dimension _dimension;
+    
     protected AbstractUnit (UnitDelegate delegate) {
         this.delegate = delegate;
     }
@@ -29,6 +32,18 @@ public abstract class AbstractUnit implements Unit
         return delegate.compatible(this, that);
     }
     
+    /**
+     * Returns the dimension of this unit, or <code>null</code> if it cannot
+     * be expressed in terms of base units or its delegate is not a
+     * {@link DefaultUnitDelegate}.
+     */
+    public Dimension getDimension () {
+        if (delegate instanceof DefaultUnitDelegate) {
+            return ((DefaultUnitDelegate)delegate).getDimension(this);
+        }
+        return null;
+    }
+    
     public Unit asType (Class type) {
         return this;
     }
@@ -11,8 +11,8 @@ public class BaseUnit extends AbstractUnit {
     
     public BaseUnit (UnitDelegate delegate, String symbol) {
         super(delegate);
-        delegate.putSymbol(this, symbol);
         _symbol = symbol;
+        delegate.putSymbol(this, symbol);
     }
     
     public Unit getSystemUnit () {
@@ -4,9 +4,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import org.ngs.ngunits.BoundedCache;
 import org.ngs.ngunits.UnconvertibleException;
 import org.ngs.ngunits.Unit;
 import org.ngs.ngunits.UnitConverter;
+import org.ngs.ngunits.UnitEvents;
+import org.ngs.ngunits.UnitMetrics;
 import org.ngs.ngunits.converter.AbstractUnitConverter;
 
 /** */
@@ -20,47 +25,166 @@ public class DefaultUnitDelegate implements UnitDelegate
         }
     }
     
+    /** Key of the converter cache: an ordered pair of units. */
+    private static final class ConverterKey {
+        
+        private final Unit _from;
+        
+        private final Unit _to;
+        
+        ConverterKey (Unit from, Unit to) {
+            _from = from;
+            _to = to;
+        }
+        
+        @Override
+        public boolean equals (Object that) {
+            if (this == that) {
+                return true;
+            }
+            if (!(that instanceof ConverterKey)) {
+                return false;
+            }
+            ConverterKey key = (ConverterKey)that;
+            return _from.equals(key._from) && _to.equals(key._to);
+        }
+        
+        @Override
+        public int hashCode () {
+            return 31 * _from.hashCode() + _to.hashCode();
+        }
+    }
+    
     public static final UnitDelegate INSTANCE = new DefaultUnitDelegate();
     
+    /** Default capacity of the converter cache. */
+    public static final int DEFAULT_CONVERTER_CACHE_SIZE = 1024;
+    
     private final AbstractUnit _one;
     
-    private final Map<String,Unit> _symbols;
+    /** 
+     * Units by symbol. The map is never modified once published; symbols
+     * are added by replacing it with a modified copy.
+     */
+    private final AtomicReference<Map<String,Unit>> _symbols;
+    
+    /** Converters by (from, to) pair, or <code>null</code> if caching is disabled. */
+    private volatile BoundedCache<ConverterKey,UnitConverter> _converterCache;
+    
+    /** Indexes of base units in dimension vectors. */
+    private final ConcurrentHashMap<Unit,Integer> _baseUnitIndexes;
+    
+    /** Canonical instances of derived units, or <code>null</code> if interning is disabled. */
+    private volatile UnitInterner _interner;
     
     public DefaultUnitDelegate () {
-        _one = new ProductUnit(this, new HashMap<Unit,Integer>());
-        _symbols = new HashMap<String,Unit>();
+        _one = new ProductUnit(this, new Unit[0], new int[0]);
+        _symbols = new AtomicReference<Map<String,Unit>>(Collections.<String,Unit>emptyMap());
+        _baseUnitIndexes = new ConcurrentHashMap<Unit,Integer>();
+        _converterCache = new BoundedCache<ConverterKey,UnitConverter>(DEFAULT_CONVERTER_CACHE_SIZE, BoundedCache.Policy.SECOND_CHANCE);
     }
     
     public AbstractUnit one () {
         return _one;
     }
 
-    public synchronized void putSymbol (Unit unit, String symbol) {
-        if (_symbols.containsKey(symbol)) {
-            Unit unit1 = _symbols.get(symbol);
-            if ((!(unit instanceof AlternateUnit)) ||
-                (!(unit1 instanceof AlternateUnit)) ||
-                (!((AlternateUnit)unit).getParent().equals(((AlternateUnit)unit1).getParent()))) {
-                new IllegalArgumentException("Symbol " + symbol + " is already associated to a different unit");
+    /**
+     * Associates a symbol with a unit. A symbol may only be associated with
+     * another unit if both are alternate units of the same parent.
+     * @throws IllegalArgumentException if the symbol is already associated
+     *   with a different unit.
+     */
+    public void putSymbol (Unit unit, String symbol) {
+        while (true) {
+            Map<String,Unit> symbols = _symbols.get();
+            Unit unit1 = symbols.get(symbol);
+            if (unit1 == unit) {
+                return;
+            }
+            if ((unit1 != null) &&
+                ((!(unit instanceof AlternateUnit)) ||
+                 (!(unit1 instanceof AlternateUnit)) ||
+                 (!((AlternateUnit)unit).getParent().equals(((AlternateUnit)unit1).getParent())))) {
+                throw new IllegalArgumentException("Symbol " + symbol + " is already associated to a different unit");
+            }
+            Map<String,Unit> newSymbols = new HashMap<String,Unit>(symbols);
+            newSymbols.put(symbol, unit);
+            if (_symbols.compareAndSet(symbols, newSymbols)) {
+                return;
             }
         }
-        _symbols.put(symbol, unit);
     }
     
+    /** Returns a snapshot of the units by symbol, which later definitions do not change. */
     public Set<Map.Entry<String,Unit>> getSymbols () {
-        return Collections.unmodifiableSet(_symbols.entrySet());
+        return Collections.unmodifiableMap(_symbols.get()).entrySet();
     }
     
     public boolean compatible (Unit a, Unit b) {
-        try {
-            return getBaseUnit(a).equals(getBaseUnit(b));
-        } catch (BaseUnitException e) {
-            return false;
-        }
+        Dimension dimension = getDimension(a);
+        return (dimension != null) && dimension.equals(getDimension(b));
     }   
     
+    public Dimension getDimension (Unit unit) {
+        Dimension result = dimension(unit);
+        return (result == Dimension.UNDEFINED) ? null : result;
+    }
+    
+    /** Returns the dimension of the given unit, or <code>Dimension.UNDEFINED</code>. */
+    private Dimension dimension (Unit unit) {
+        if (!(unit instanceof AbstractUnit)) {
+            return Dimension.UNDEFINED;
+        }
+        AbstractUnit u = (AbstractUnit)unit;
+        Dimension result = u._dimension;
+        if (result == null) {
+            result = computeDimension(unit);
+            u._dimension = result;
+        }
+        return result;
+    }
+    
+    /** Follows the same expansion into base units as {@link #getBaseConverter}. */
+    private Dimension computeDimension (Unit unit) {
+        if (unit instanceof BaseUnit) {
+            return Dimension.base(getBaseUnitIndex(unit));
+        } else if (unit instanceof AlternateUnit) {
+            return dimension(((AlternateUnit)unit).getParent());
+        } else if (unit instanceof TransformedUnit) {
+            return dimension(((TransformedUnit)unit).getParent());
+        } else if (unit instanceof ProductUnit) {
+            Dimension result = Dimension.NONE;
+            ProductUnit product = (ProductUnit)unit;
+            for (int i = 0; i < product._units.length; i += 1) {
+                Dimension factor = dimension(product._units[i]);
+                if (factor == Dimension.UNDEFINED) {
+                    return Dimension.UNDEFINED;
+                }
+                result = result.multiply(factor, product._exponents[i]);
+            }
+            return result;
+        } else {
+            return Dimension.UNDEFINED;
+        }
+    }
+    
+    /** Returns the index of the given base unit, assigning the next one if it has none. */
+    private int getBaseUnitIndex (Unit baseUnit) {
+        Integer index = _baseUnitIndexes.get(baseUnit);
+        if (index == null) {
+            synchronized (_baseUnitIndexes) {
+                index = _baseUnitIndexes.get(baseUnit);
+                if (index == null) {
+                    index = Integer.valueOf(_baseUnitIndexes.size());
+                    _baseUnitIndexes.put(baseUnit, index);
+                }
+            }
+        }
+        return index.intValue();
+    }
+    
     public Unit annotate (Unit unit, String annotation) {
-        return new AnnotatedUnit(this, unit, annotation);
+        return intern(new AnnotatedUnit(this, unit, annotation));
     }
     
     public Unit alternate (Unit unit, String symbol) {
@@ -75,105 +199,175 @@ public class DefaultUnitDelegate implements UnitDelegate
         if (operation.isIdentity()) {
             return unit;
         } else {
-            return new TransformedUnit(this, unit, operation);
+            return create(new TransformedUnit(this, unit, operation));
         }
     }
     
     public Unit multiply (Unit a, Unit b) {
-        return getProductInstance(productEntries(a), productEntries(b));
+        return ProductUnit.product(this, a, b, 1);
     }
     
     public Unit divide (Unit a, Unit b) {
-        Map<Unit,Integer> quotientEntries = new HashMap<Unit,Integer>();
-        for (Map.Entry<Unit,Integer> entry : productEntries(b).entrySet()) {
-            quotientEntries.put(entry.getKey(), Integer.valueOf(-entry.getValue().intValue()));
-        }
-        return getProductInstance(productEntries(a), quotientEntries);
+        return ProductUnit.product(this, a, b, -1);
     }
     
     public Unit pow (Unit unit, int exponent) {
-        Map<Unit,Integer> entries = new HashMap<Unit,Integer>();
-        Map<Unit,Integer> products = unit.getProductUnits();
-        if (products != null) {
-            for (Map.Entry<Unit,Integer> entry : products.entrySet()) {
-                entries.put(entry.getKey(), Integer.valueOf(entry.getValue().intValue() * exponent));
-            }
+        return ProductUnit.power(this, unit, exponent, 1);
+    }
+    
+    public Unit root (Unit unit, int root) {
+        if (!(unit instanceof ProductUnit)) {
+            throw new ArithmeticException("fractional powers not supported");
+        }
+        return ProductUnit.power(this, unit, 1, root);
+    }
+    
+    /**
+     * Returns the cache used by {@link #getConverter(Unit, Unit)}, for 
+     * inspecting its hit and miss counts, or <code>null</code> if converters
+     * are not cached.
+     */
+    public BoundedCache<?,UnitConverter> getConverterCache () {
+        return _converterCache;
+    }
+    
+    /**
+     * Replaces the converter cache with an empty one of the given size and
+     * eviction policy. A size of zero disables caching.
+     * @param size the maximum number of (from, to) pairs to cache.
+     * @param policy the eviction policy.
+     */
+    public void setConverterCache (int size, BoundedCache.Policy policy) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative cache size");
+        } else if (size == 0) {
+            _converterCache = null;
         } else {
-            entries.put(unit, Integer.valueOf(exponent));
+            _converterCache = new BoundedCache<ConverterKey,UnitConverter>(size, policy);
         }
-        return new ProductUnit(this, entries);
     }
     
-    public Unit root (Unit unit, int root) {
-        Map<Unit,Integer> products = unit.getProductUnits();
-        if (products != null) {
-            Map<Unit,Integer> entries = new HashMap<Unit,Integer>();
-            for (Map.Entry<Unit,Integer> entry : products.entrySet()) {
-                if ((entry.getValue().intValue() % root) != 0) {
-                    throw new ArithmeticException("fractional powers not supported");
+    /**
+     * Indicates if derived units are interned.
+     * @see #setInterning(boolean)
+     */
+    public boolean isInterning () {
+        return _interner != null;
+    }
+    
+    /**
+     * Enables or disables interning of derived units. When enabled, the
+     * product, transformed and annotated units created by this delegate
+     * (including those created when parsing) are looked up in a weakly
+     * referenced table, and a structurally equal unit created earlier is
+     * returned instead of the new one, so equal units are usually the same
+     * instance and compare with <code>==</code>. Units created before
+     * interning was enabled are not in the table. Disabling interning
+     * discards the table.
+     * @param interning <code>true</code> to intern derived units.
+     */
+    public synchronized void setInterning (boolean interning) {
+        if (!interning) {
+            _interner = null;
+        } else if (_interner == null) {
+            _interner = new UnitInterner();
+        }
+    }
+    
+    /** */
+    private Unit intern (Unit unit) {
+        UnitInterner interner = _interner;
+        return (interner == null) ? unit : interner.intern(unit);
+    }
+    
+    /** Interns a newly created product or transformed unit, recording an event for it. */
+    private Unit create (Unit unit) {
+        UnitEvents events = UnitEvents.INSTANCE;
+        Object event = (events == null) ? null : events.beginUnitCreation();
+        Unit result = intern(unit);
+        if (event != null) {
+            events.endUnitCreation(event, unit, result);
+        }
+        return result;
+    }
+    
+    public UnitConverter getConverter (Unit from, Unit to) throws UnconvertibleException {
+        UnitEvents events = UnitEvents.INSTANCE;
+        Object event = (events == null) ? null : events.beginConverter();
+        UnitMetrics metrics = UnitMetrics.getInstance();
+        BoundedCache<ConverterKey,UnitConverter> cache = _converterCache;
+        UnitConverter result = null;
+        UnitEvents.CacheOutcome outcome = UnitEvents.CacheOutcome.UNCACHED;
+        try {
+            if (from.equals(to)) {
+                // Not cached, but reported like every other lookup.
+                result = AbstractUnitConverter.IDENTITY;
+            } else if (cache == null) {
+                result = createConverter(from, to);
+            } else {
+                ConverterKey key = new ConverterKey(from, to);
+                result = cache.get(key);
+                outcome = UnitEvents.CacheOutcome.HIT;
+                if (result == null) {
+                    outcome = UnitEvents.CacheOutcome.MISS;
+                    result = cache.put(key, createConverter(from, to));
                 }
-                entries.put(entry.getKey(), Integer.valueOf(entry.getValue().intValue() / root));
             }
-            return new ProductUnit(this, entries);
-        } else {
-            throw new ArithmeticException("fractional powers not supported");
+            return result;
+        } finally {
+            if (outcome == UnitEvents.CacheOutcome.HIT) {
+                metrics.cacheHit(UnitMetrics.Cache.CONVERTER);
+            } else if (outcome == UnitEvents.CacheOutcome.MISS) {
+                metrics.cacheMiss(UnitMetrics.Cache.CONVERTER);
+            }
+            if (result != null) {
+                metrics.converterFound(from, to);
+            } else {
+                metrics.unconvertible(from, to);
+            }
+            if (event != null) {
+                events.endConverter(event, from, to, result, outcome);
+            }
         }
     }
     
-    public UnitConverter getConverter (Unit from, Unit to) throws UnconvertibleException {
-        if (from.equals(to)) {
-            return AbstractUnitConverter.IDENTITY;
+    private UnitConverter createConverter (Unit from, Unit to) throws UnconvertibleException {
+        Dimension fromDimension = dimension(from);
+        Dimension toDimension = dimension(to);
+        boolean known = (fromDimension != Dimension.UNDEFINED) && (toDimension != Dimension.UNDEFINED);
+        if (known && !fromDimension.equals(toDimension)) {
+            throw new UnconvertibleException("unable to convert", from, to);
         }
         Unit fromSystemUnit = from.getSystemUnit();
         Unit toSystemUnit = to.getSystemUnit();
         if (fromSystemUnit.equals(toSystemUnit)) {
-            return ((AbstractUnit)to).toSystemUnit().inverse().concatenate(((AbstractUnit)from).toSystemUnit());
+            return AbstractUnitConverter.normalize(((AbstractUnit)to).toSystemUnit().inverse().concatenate(((AbstractUnit)from).toSystemUnit()));
         }
         try {
-            Unit fromBaseUnit = getBaseUnit(from);
-            Unit toBaseUnit = getBaseUnit(to);
-            if (fromBaseUnit.equals(toBaseUnit)) {
+            if (known) {
                 UnitConverter fromConverter = ((AbstractUnit)from).toSystemUnit().concatenate(getBaseConverter(fromSystemUnit));
                 UnitConverter toConverter = ((AbstractUnit)to).toSystemUnit().concatenate(getBaseConverter(toSystemUnit));
-                return toConverter.inverse().concatenate(fromConverter);
+                return AbstractUnitConverter.normalize(toConverter.inverse().concatenate(fromConverter));
             }
         } catch (BaseUnitException e) { }
         throw new UnconvertibleException("unable to convert", from, to);
     }
     
-    private Unit getBaseUnit (Unit unit) throws BaseUnitException {
-        if (unit instanceof BaseUnit) {
-            return unit;
-        } else if (unit instanceof AlternateUnit) {
-            return getBaseUnit(((AlternateUnit)unit).getParent());
-        } else if (unit instanceof TransformedUnit) {
-            return getBaseUnit(((TransformedUnit)unit).getParent());
-        } else if (unit instanceof ProductUnit) {
-            Unit result = _one;
-            for (Map.Entry<Unit,Integer> entry : ((Map<Unit,Integer>)unit.getProductUnits()).entrySet()) {
-                result = result.multiply(getBaseUnit(entry.getKey()).pow(entry.getValue().intValue()));
-            }
-            return result;
-        } else {
-            throw new BaseUnitException();
-        }
-    }
-    
     private UnitConverter getBaseConverter (Unit baseUnit) throws BaseUnitException {
         UnitConverter result = AbstractUnitConverter.IDENTITY;
-        Map<Unit,Integer> entries = baseUnit.getProductUnits();
-        if (entries != null) {
-            for (Map.Entry<Unit,Integer> entry : entries.entrySet()) {
-                UnitConverter converter = getBaseConverter(entry.getKey());
+        if (baseUnit instanceof ProductUnit) {
+            ProductUnit product = (ProductUnit)baseUnit;
+            for (int i = 0; i < product._units.length; i += 1) {
+                UnitConverter converter = getBaseConverter(product._units[i]);
                 if (!converter.isLinear()) {
                     throw new BaseUnitException();
                 }
-                int pow = entry.getValue().intValue();
+                int pow = product._exponents[i];
                 if (pow < 0) {
                     pow = -pow;
                     converter = converter.inverse();
                 }
-                for (int i = 0; i < pow; i += 1) {
+                for (int j = 0; j < pow; j += 1) {
                     result = result.concatenate(converter);
                 }
             }
@@ -181,38 +375,25 @@ public class DefaultUnitDelegate implements UnitDelegate
         return result;
     }
     
-    private Map<Unit,Integer> productEntries (Unit unit) {
-        Map<Unit,Integer> result = unit.getProductUnits();
-        if (result == null) {
-            result = new HashMap<Unit,Integer>();
-            result.put(unit, Integer.valueOf(1));
-        }
-        return result;
-    }
-    
-    private Unit getProductInstance (Map<Unit,Integer> a, Map<Unit,Integer> b) {
-        Map<Unit,Integer> entries = new HashMap<Unit,Integer>();
-        for (Map.Entry<Unit,Integer> entry : a.entrySet()) {
-            if (b.containsKey(entry.getKey())) {
-                int exponent = entry.getValue().intValue() + b.get(entry.getKey()).intValue();
-                if (exponent != 0) {
-                    entries.put(entry.getKey(), Integer.valueOf(exponent));
-                }
-            } else {
-                entries.put(entry.getKey(), entry.getValue());
-            }
-        }
-        for (Map.Entry<Unit,Integer> entry : b.entrySet()) {
-            if (!a.containsKey(entry.getKey())) {
-                entries.put(entry.getKey(), entry.getValue());
-            }
-        }
-        if (entries.size() == 0) {
+    /**
+     * Returns the unit whose factors are the first <code>n</code> elements
+     * of the given arrays, which may be longer.
+     */
+    Unit productInstance (Unit[] units, int[] exponents, int n) {
+        if (n == 0) {
             return _one;
-        } else if ((entries.size() == 1) && (entries.values().iterator().next().intValue() == 1)) {
-            return entries.keySet().iterator().next();
+        } else if ((n == 1) && (exponents[0] == 1)) {
+            return units[0];
         } else {
-            return new ProductUnit(this, entries);
+            if (n < units.length) {
+                Unit[] u = new Unit[n];
+                int[] e = new int[n];
+                System.arraycopy(units, 0, u, 0, n);
+                System.arraycopy(exponents, 0, e, 0, n);
+                units = u;
+                exponents = e;
+            }
+            return create(new ProductUnit(this, units, exponents));
         }
     }
 }
@@ -0,0 +1,145 @@
+package org.ngs.ngunits.unit;
+
+import java.util.Arrays;
+
+/**
+ * The dimension of a unit: the exponent of each base unit in the unit's
+ * expansion into base units. Base units are numbered by their
+ * {@link UnitDelegate} in the order it first sees them, so dimensions are
+ * only comparable between units of the same delegate.
+ * <p>
+ * The exponents of the first eight base units are packed into a single
+ * <code>long</code>, a byte each, so comparing the dimensions of most
+ * units is a single comparison. Dimensions involving other base units,
+ * or exponents that do not fit in a byte, are stored as an array.
+ * <p>
+ * Instances of this class are immutable.
+ */
+public final class Dimension
+{
+    /** The dimension of dimensionless units. */
+    public static final Dimension NONE = new Dimension(0L, null);
+
+    /** Marks units whose dimension cannot be determined. Never returned to callers. */
+    static final Dimension UNDEFINED = new Dimension(0L, null);
+
+    /** The number of exponents packed into a <code>long</code>. */
+    private static final int PACKED_SLOTS = 8;
+
+    /** The packed exponents, if <code>_exponents</code> is <code>null</code>. */
+    private final long _packed;
+
+    /** The exponents, or <code>null</code> if they are packed. Trailing zeros are trimmed. */
+    private final int[] _exponents;
+
+    /** */
+    private Dimension (long packed, int[] exponents) {
+        _packed = packed;
+        _exponents = exponents;
+    }
+
+    /** Returns the dimension of the base unit with the given index. */
+    static Dimension base (int index) {
+        int[] exponents = new int[index + 1];
+        exponents[index] = 1;
+        return valueOf(exponents);
+    }
+
+    /** Returns the dimension with the given exponents, packed if possible. */
+    private static Dimension valueOf (int[] exponents) {
+        int length = exponents.length;
+        while ((length > 0) && (exponents[length - 1] == 0)) {
+            length -= 1;
+        }
+        if (length <= PACKED_SLOTS) {
+            long packed = 0L;
+            boolean fits = true;
+            for (int i = 0; i < length; i += 1) {
+                if ((exponents[i] < Byte.MIN_VALUE) || (exponents[i] > Byte.MAX_VALUE)) {
+                    fits = false;
+                    break;
+                }
+                packed |= (exponents[i] & 0xFFL) << (8 * i);
+            }
+            if (fits) {
+                return (packed == 0L) ? NONE : new Dimension(packed, null);
+            }
+        }
+        int[] trimmed = new int[length];
+        System.arraycopy(exponents, 0, trimmed, 0, length);
+        return new Dimension(0L, trimmed);
+    }
+
+    /** Returns the number of base units this dimension may involve. */
+    private int length () {
+        return (_exponents != null) ? _exponents.length : PACKED_SLOTS;
+    }
+
+    /**
+     * Returns the exponent of the base unit with the given index in this
+     * dimension.
+     */
+    public int getExponent (int index) {
+        if (_exponents != null) {
+            return (index < _exponents.length) ? _exponents[index] : 0;
+        } else if (index < PACKED_SLOTS) {
+            return (byte)(_packed >>> (8 * index));
+        } else {
+            return 0;
+        }
+    }
+
+    /** Returns the product of this dimension and <code>that</code> raised to <code>exponent</code>. */
+    Dimension multiply (Dimension that, int exponent) {
+        if ((_exponents == null) && (that._exponents == null)) {
+            long packed = 0L;
+            for (int i = 0; i < PACKED_SLOTS; i += 1) {
+                int e = getExponent(i) + exponent * that.getExponent(i);
+                if ((e < Byte.MIN_VALUE) || (e > Byte.MAX_VALUE)) {
+                    return multiplySlow(that, exponent);
+                }
+                packed |= (e & 0xFFL) << (8 * i);
+            }
+            return (packed == 0L) ? NONE : new Dimension(packed, null);
+        }
+        return multiplySlow(that, exponent);
+    }
+
+    /** */
+    private Dimension multiplySlow (Dimension that, int exponent) {
+        int[] exponents = new int[Math.max(length(), that.length())];
+        for (int i = 0; i < exponents.length; i += 1) {
+            exponents[i] = getExponent(i) + exponent * that.getExponent(i);
+        }
+        return valueOf(exponents);
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Dimension)) {
+            return false;
+        }
+        Dimension that = (Dimension)obj;
+        return (_packed == that._packed) && Arrays.equals(_exponents, that._exponents);
+    }
+
+    @Override
+    public int hashCode () {
+        return (_exponents != null) ? Arrays.hashCode(_exponents) : (int)(_packed ^ (_packed >>> 32));
+    }
+
+    @Override
+    public String toString () {
+        StringBuilder buffer = new StringBuilder("[");
+        for (int i = 0; i < length(); i += 1) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            buffer.append(getExponent(i));
+        }
+        return buffer.append(']').toString();
+    }
+}
@@ -3,79 +3,380 @@ package org.ngs.ngunits.unit;
 import org.ngs.ngunits.UnconvertibleException;
 import org.ngs.ngunits.UnitConverter;
 import org.ngs.ngunits.Unit;
-import java.util.Collections;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import org.ngs.ngunits.converter.AbstractUnitConverter;
 
 /** */
-public final class ProductUnit extends AbstractUnit 
+public final class ProductUnit extends AbstractUnit
 {
-    private Map<Unit,Integer> _entries;
-    
-    ProductUnit (UnitDelegate delegate, Map<Unit,Integer> entries) {
+    /** The factors, sorted by hash code; never equal to each other. */
+    final Unit[] _units;
+
+    /** The exponent of each factor, never zero. */
+    final int[] _exponents;
+
+    private final int _hashCode;
+
+    /** Memoized {@link #getSystemUnit()}; racy but idempotent. */
+    private Unit _systemUnit;
+
+    /** Memoized {@link #toSystemUnit()}; racy but idempotent. */
+    private UnitConverter _toSystemUnit;
+
+    /**
+     * Creates a product unit. The arrays are used as is; they must have the
+     * same length, with units sorted by hash code, no two units equal and
+     * no zero exponent.
+     */
+    ProductUnit (UnitDelegate delegate, Unit[] units, int[] exponents) {
         super(delegate);
-        _entries = entries;
+        _units = units;
+        _exponents = exponents;
+        int hashCode = 0;
+        for (int i = 0; i < units.length; i += 1) {
+            // Same as the hash code of the equivalent Map<Unit,Integer>.
+            hashCode += units[i].hashCode() ^ exponents[i];
+        }
+        _hashCode = hashCode;
     }
-    
+
     public Unit getSystemUnit () {
-        if (hasOnlySystemUnits()) {
-            return this;
-        } else {
-            Unit result = delegate.one();
-            for (Map.Entry<Unit,Integer> entry : _entries.entrySet()) {
-                result = result.multiply(entry.getKey().getSystemUnit().pow(entry.getValue().intValue()));
+        Unit result = _systemUnit;
+        if (result == null) {
+            if (hasOnlySystemUnits()) {
+                result = this;
+            } else {
+                result = delegate.one();
+                for (int i = 0; i < _units.length; i += 1) {
+                    result = result.multiply(_units[i].getSystemUnit().pow(_exponents[i]));
+                }
             }
-            return result;
+            _systemUnit = result;
         }
+        return result;
     }
-    
+
     public UnitConverter toSystemUnit () {
+        UnitConverter result = _toSystemUnit;
+        if (result == null) {
+            // Not memoized if it throws, so each call reports the failure.
+            result = computeToSystemUnit();
+            _toSystemUnit = result;
+        }
+        return result;
+    }
+
+    /** */
+    private UnitConverter computeToSystemUnit () {
         if (hasOnlySystemUnits()) {
             return AbstractUnitConverter.IDENTITY;
         } else {
             UnitConverter result = AbstractUnitConverter.IDENTITY;
-            for (Map.Entry<Unit,Integer> entry : _entries.entrySet()) {
-                UnitConverter converter = ((AbstractUnit)entry.getKey()).toSystemUnit();
+            for (int i = 0; i < _units.length; i += 1) {
+                UnitConverter converter = ((AbstractUnit)_units[i]).toSystemUnit();
                 if (!converter.isLinear()) {
-                    throw new UnconvertibleException("unit is non-linear, cannot convert", 
-                                                     entry.getKey(), 
-                                                     entry.getKey().getSystemUnit());
+                    throw new UnconvertibleException("unit is non-linear, cannot convert",
+                                                     _units[i],
+                                                     _units[i].getSystemUnit());
                 }
-                int pow = entry.getValue().intValue();
+                int pow = _exponents[i];
                 if (pow < 0) {
                     pow = -pow;
                     converter = converter.inverse();
                 }
-                for (int i = 0; i < pow; i += 1) {
+                for (int j = 0; j < pow; j += 1) {
                     result = result.concatenate(converter);
                 }
             }
             return result;
         }
     }
-    
+
+    /**
+     * Returns a read-only view of the factors of this unit and their
+     * exponents.
+     */
     @Override
     public Map<Unit, Integer> getProductUnits () {
-        return Collections.unmodifiableMap(_entries);
+        return new Factors();
     }
 
     @Override
     public boolean equals (Object that) {
-        return (this == that) ||
-               ((that instanceof ProductUnit) && ((ProductUnit)that)._entries.equals(_entries));
+        if (this == that) {
+            return true;
+        }
+        if (!(that instanceof ProductUnit)) {
+            return false;
+        }
+        ProductUnit product = (ProductUnit)that;
+        if ((product._hashCode != _hashCode) || (product._units.length != _units.length)) {
+            return false;
+        }
+        for (int i = 0; i < _units.length; i += 1) {
+            if ((product._exponents[i] != _exponents[i]) || !product._units[i].equals(_units[i])) {
+                // Factors with the same hash code may be in a different order.
+                return getProductUnits().equals(product.getProductUnits());
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return _entries.hashCode();
+        return _hashCode;
     }
-    
+
     private boolean hasOnlySystemUnits () {
-        for (Unit u : _entries.keySet()) {
+        for (Unit u : _units) {
             if (u != u.getSystemUnit()) {
                 return false;
             }
         }
         return true;
     }
+
+    /** Returns the index of the given unit in <code>_units</code>, or -1. */
+    private int indexOf (Object unit) {
+        if (!(unit instanceof Unit)) {
+            return -1;
+        }
+        int hash = unit.hashCode();
+        int low = 0;
+        int high = _units.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midHash = _units[mid].hashCode();
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                // Scan the run of units with this hash code.
+                int i = mid;
+                while ((i > 0) && (_units[i - 1].hashCode() == hash)) {
+                    i -= 1;
+                }
+                for (; (i < _units.length) && (_units[i].hashCode() == hash); i += 1) {
+                    if (_units[i].equals(unit)) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /////////////
+    // Algebra //
+    /////////////
+
+    /** The factors of a unit that is not a product unit: the unit itself. */
+    static Unit[] unitsOf (Unit unit) {
+        return (unit instanceof ProductUnit) ? ((ProductUnit)unit)._units : new Unit[] { unit };
+    }
+
+    /** The exponents of a unit that is not a product unit: one. */
+    static int[] exponentsOf (Unit unit) {
+        return (unit instanceof ProductUnit) ? ((ProductUnit)unit)._exponents : new int[] { 1 };
+    }
+
+    /**
+     * Returns the product of <code>a</code> and <code>b</code> raised to
+     * <code>sign</code> (1 for a product, -1 for a quotient), as a unit
+     * created by <code>delegate</code>. The result is the delegate's
+     * <code>one()</code> if all exponents cancel, the factor itself if only
+     * one factor remains with an exponent of one, and a new product unit
+     * otherwise.
+     */
+    static Unit product (DefaultUnitDelegate delegate, Unit a, Unit b, int sign) {
+        Unit[] aUnits = unitsOf(a);
+        int[] aExponents = exponentsOf(a);
+        Unit[] bUnits = unitsOf(b);
+        int[] bExponents = exponentsOf(b);
+        Unit[] units = new Unit[aUnits.length + bUnits.length];
+        int[] exponents = new int[units.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while ((i < aUnits.length) || (j < bUnits.length)) {
+            int aHash = (i < aUnits.length) ? aUnits[i].hashCode() : 0;
+            int bHash = (j < bUnits.length) ? bUnits[j].hashCode() : 0;
+            if ((j == bUnits.length) || ((i < aUnits.length) && (aHash < bHash))) {
+                units[n] = aUnits[i];
+                exponents[n++] = aExponents[i++];
+            } else if ((i == aUnits.length) || (bHash < aHash)) {
+                units[n] = bUnits[j];
+                exponents[n++] = sign * bExponents[j++];
+            } else {
+                // Merge the runs of factors with this hash code.
+                int aEnd = i;
+                while ((aEnd < aUnits.length) && (aUnits[aEnd].hashCode() == aHash)) {
+                    aEnd += 1;
+                }
+                int bEnd = j;
+                while ((bEnd < bUnits.length) && (bUnits[bEnd].hashCode() == aHash)) {
+                    bEnd += 1;
+                }
+                int bStart = j;
+                boolean[] merged = new boolean[bEnd - bStart];
+                for (; i < aEnd; i += 1) {
+                    int exponent = aExponents[i];
+                    for (int k = bStart; k < bEnd; k += 1) {
+                        if (!merged[k - bStart] && aUnits[i].equals(bUnits[k])) {
+                            exponent += sign * bExponents[k];
+                            merged[k - bStart] = true;
+                            break;
+                        }
+                    }
+                    if (exponent != 0) {
+                        units[n] = aUnits[i];
+                        exponents[n++] = exponent;
+                    }
+                }
+                for (; j < bEnd; j += 1) {
+                    if (!merged[j - bStart]) {
+                        units[n] = bUnits[j];
+                        exponents[n++] = sign * bExponents[j];
+                    }
+                }
+            }
+        }
+        return delegate.productInstance(units, exponents, n);
+    }
+
+    /**
+     * Returns <code>unit</code> with its exponents multiplied by
+     * <code>multiplier</code> and then divided by <code>divisor</code>.
+     * @throws ArithmeticException if an exponent is not divisible by
+     *   <code>divisor</code>.
+     */
+    static Unit power (DefaultUnitDelegate delegate, Unit unit, int multiplier, int divisor) {
+        Unit[] units = unitsOf(unit);
+        int[] exponents = new int[units.length];
+        int[] unitExponents = exponentsOf(unit);
+        for (int i = 0; i < units.length; i += 1) {
+            if ((unitExponents[i] * multiplier) % divisor != 0) {
+                throw new ArithmeticException("fractional powers not supported");
+            }
+            exponents[i] = unitExponents[i] * multiplier / divisor;
+        }
+        if (multiplier == 0) {
+            return delegate.productInstance(units, exponents, 0);
+        }
+        return delegate.productInstance(units.clone(), exponents, units.length);
+    }
+
+    //////////////
+    // Map view //
+    //////////////
+
+    /** A read-only view of the factors as a map. */
+    private final class Factors extends AbstractMap<Unit,Integer> {
+
+        @Override
+        public int size () {
+            return _units.length;
+        }
+
+        @Override
+        public boolean containsKey (Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public Integer get (Object key) {
+            int i = indexOf(key);
+            return (i < 0) ? null : Integer.valueOf(_exponents[i]);
+        }
+
+        @Override
+        public int hashCode () {
+            return _hashCode;
+        }
+
+        @Override
+        public Set<Map.Entry<Unit,Integer>> entrySet () {
+            return new AbstractSet<Map.Entry<Unit,Integer>>() {
+
+                @Override
+                public int size () {
+                    return _units.length;
+                }
+
+                @Override
+                public Iterator<Map.Entry<Unit,Integer>> iterator () {
+                    return new Iterator<Map.Entry<Unit,Integer>>() {
+
+                        private int _next = 0;
+
+                        public boolean hasNext () {
+                            return _next < _units.length;
+                        }
+
+                        public Map.Entry<Unit,Integer> next () {
+                            if (_next >= _units.length) {
+                                throw new NoSuchElementException();
+                            }
+                            return new Factor(_units[_next], _exponents[_next++]);
+                        }
+
+                        public void remove () {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /** An entry of the map view. */
+    private static final class Factor implements Map.Entry<Unit,Integer> {
+
+        private final Unit _unit;
+
+        private final int _exponent;
+
+        Factor (Unit unit, int exponent) {
+            _unit = unit;
+            _exponent = exponent;
+        }
+
+        public Unit getKey () {
+            return _unit;
+        }
+
+        public Integer getValue () {
+            return Integer.valueOf(_exponent);
+        }
+
+        public Integer setValue (Integer value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals (Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?,?> entry = (Map.Entry<?,?>)obj;
+            return _unit.equals(entry.getKey()) && getValue().equals(entry.getValue());
+        }
+
+        @Override
+        public int hashCode () {
+            return _unit.hashCode() ^ _exponent;
+        }
+
+        @Override
+        public String toString () {
+            return _unit + "=" + _exponent;
+        }
+    }
 }
@@ -11,12 +11,18 @@ public final class TransformedUnit extends AbstractUnit
     
     private final UnitConverter _toParent;
     
+    private final int _hashCode;
+    
+    /** Memoized {@link #toSystemUnit()}; racy but idempotent. */
+    private UnitConverter _toSystemUnit;
+    
     TransformedUnit (UnitDelegate delegate, Unit parent, UnitConverter toParent) {
         super(delegate);
         if (toParent == AbstractUnitConverter.IDENTITY)
             throw new IllegalArgumentException("Identity not allowed");
         _parent = parent;
         _toParent = toParent;
+        _hashCode = parent.hashCode() ^ toParent.hashCode();
     }
     
     public Unit getParent () {
@@ -32,19 +38,25 @@ public final class TransformedUnit extends AbstractUnit
     }
     
     public UnitConverter toSystemUnit () {
-        return ((AbstractUnit)_parent).toSystemUnit().concatenate(_toParent);
+        UnitConverter result = _toSystemUnit;
+        if (result == null) {
+            result = ((AbstractUnit)_parent).toSystemUnit().concatenate(_toParent);
+            _toSystemUnit = result;
+        }
+        return result;
     }
 
     @Override
     public boolean equals (Object that) {
         return (this == that) ||
                ((that instanceof TransformedUnit) &&
+                (((TransformedUnit)that)._hashCode == _hashCode) &&
                 ((TransformedUnit)that)._parent.equals(_parent) &&
                 ((TransformedUnit)that)._toParent.equals(_toParent));
     }
 
     @Override
     public int hashCode () {
-        return _parent.hashCode() ^ _toParent.hashCode();
+        return _hashCode;
     }
 }
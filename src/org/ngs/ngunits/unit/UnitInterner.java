@@ -0,0 +1,107 @@
+package org.ngs.ngunits.unit;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import org.ngs.ngunits.Unit;
+
+/**
+ * A table of canonical unit instances. {@link #intern} returns the
+ * instance already in the table that is structurally equal to the given
+ * unit, or adds the given unit. The table only holds weak references, so
+ * units that are no longer used elsewhere can still be collected.
+ */
+final class UnitInterner
+{
+    /** A weak reference to a unit, usable as a key in the table. */
+    private static final class Key extends WeakReference<Unit> {
+
+        private final int _hash;
+
+        Key (Unit unit, ReferenceQueue<Unit> queue) {
+            super(unit, queue);
+            _hash = unit.hashCode();
+        }
+
+        @Override
+        public boolean equals (Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Unit a = get();
+            Unit b = ((Key)obj).get();
+            return (a != null) && (b != null) && same(a, b);
+        }
+
+        @Override
+        public int hashCode () {
+            return _hash;
+        }
+    }
+
+    /** */
+    private final ConcurrentHashMap<Key,Key> _table;
+
+    /** Keys of units that have been collected. */
+    private final ReferenceQueue<Unit> _queue;
+
+    UnitInterner () {
+        _table = new ConcurrentHashMap<Key,Key>();
+        _queue = new ReferenceQueue<Unit>();
+    }
+
+    /**
+     * Returns the canonical instance of the given unit.
+     */
+    Unit intern (Unit unit) {
+        expunge();
+        Key key = new Key(unit, _queue);
+        while (true) {
+            Key existing = _table.putIfAbsent(key, key);
+            if (existing == null) {
+                return unit;
+            }
+            Unit result = existing.get();
+            if (result != null) {
+                key.clear();
+                return result;
+            }
+            // Collected since the lookup; replace it.
+            _table.remove(existing);
+        }
+    }
+
+    /** Returns the number of units in the table, including any not yet expunged. */
+    int size () {
+        return _table.size();
+    }
+
+    /** Removes the keys of collected units. */
+    private void expunge () {
+        Object key;
+        while ((key = _queue.poll()) != null) {
+            _table.remove(key);
+        }
+    }
+
+    /**
+     * Indicates if two units are interchangeable. This is stricter than
+     * <code>equals</code> for annotated units, which are equal to their
+     * parent whatever the annotation.
+     */
+    private static boolean same (Unit a, Unit b) {
+        if ((a.getClass() != b.getClass()) || !a.equals(b)) {
+            return false;
+        }
+        if (a instanceof AnnotatedUnit) {
+            String annotation = ((AnnotatedUnit)a).getAnnotation();
+            return ((annotation == null) ? (((AnnotatedUnit)b).getAnnotation() == null) 
+                                         : annotation.equals(((AnnotatedUnit)b).getAnnotation())) &&
+                   same(((AnnotatedUnit)a).getParent(), ((AnnotatedUnit)b).getParent());
+        }
+        return true;
+    }
+}